@@ -2,11 +2,13 @@ package nz.ac.wgtn.swen225.lc.app;
 
 import nz.ac.wgtn.swen225.lc.domain.Board;
 import nz.ac.wgtn.swen225.lc.domain.Chap;
-import nz.ac.wgtn.swen225.lc.domain.IllegalMove;
+import nz.ac.wgtn.swen225.lc.domain.GameClock;
+import nz.ac.wgtn.swen225.lc.domain.LevelCache;
 import nz.ac.wgtn.swen225.lc.domain.items.Item;
 import nz.ac.wgtn.swen225.lc.domain.items.Key;
-import nz.ac.wgtn.swen225.lc.domain.tiles.Tile;
+import nz.ac.wgtn.swen225.lc.persistency.Checkpointer;
 import nz.ac.wgtn.swen225.lc.persistency.Persistency;
+import nz.ac.wgtn.swen225.lc.persistency.SaveJournal;
 import nz.ac.wgtn.swen225.lc.renderer.AudioUnit;
 import nz.ac.wgtn.swen225.lc.renderer.Camera;
 import nz.ac.wgtn.swen225.lc.renderer.Renderer;
@@ -34,8 +36,11 @@ public class App extends JPanel implements ActionListener {
     private int time = 5;   //initialize the time to 5
     JPanel leftPanel;       //the left panel gui
     JPanel rightPanel;  //right panel gui
-    static Renderer centrePanel;    //centre render screen
-    static Board board; //the board data
+    private Renderer centrePanel;    //centre render screen
+    private Board board; //the board data
+    private GameSession session; //the game being played on the board
+    private Checkpointer checkpointer; //takes autosave checkpoints of the session
+    private SaveJournal journal; //keeps the autosave up to date with each change
     private AudioUnit audioUnit;    //object for playing audio
 
     private int treasureLeft;   //the number of fish left
@@ -45,7 +50,10 @@ public class App extends JPanel implements ActionListener {
 
     private JPanel grid;    //the jpanel grid
 
-    private Timer timer;    //the timer for running the time
+    private Timer timer;    //the timer that polls the simulation clock
+    private final GameClock clock = GameClock.system(); //the fixed timestep clock driving the game
+    private static final File AUTOSAVE = new File("LarryCroftsAdventures/Saves/autosave.json"); //the newest checkpoint
+    private static final System.Logger LOGGER = System.getLogger(App.class.getName()); //reports the cost of autosaves
 
     public boolean paused = false;      //the status of the pause
 
@@ -58,9 +66,7 @@ public class App extends JPanel implements ActionListener {
      */
     public App() {
 
-        timer = new Timer(1000, this);
-        timer.setInitialDelay(650);
-        timer.start();
+        timer = new Timer((int) (GameClock.TICK_NANOS / 1_000_000), this);
 
         try {
             ImageIcon backgroundImageIcon = new ImageIcon("LarryCroftsAdventures/assets/background.png");
@@ -101,10 +107,27 @@ public class App extends JPanel implements ActionListener {
      * Performs the initial setup of the game interface and components.
      */
     public void setup(File file) {
+        setup(file, true);
+    }
+
+    /**
+     * Sets the game up to replay a recording from the given state. A replay is
+     * not the player's own game, so no autosave checkpoints are taken of it.
+     * @param file the save holding the state the recording starts from
+     */
+    public void setupReplay(File file) {
+        setup(file, false);
+    }
+
+    /**
+     * Sets the game up from a level or save file.
+     * @param file the level or save to play
+     * @param autosave whether to take autosave checkpoints of the game
+     */
+    private void setup(File file, boolean autosave) {
         if (centrePanel != null) { // if there has previously been a Renderer created, remove its corresponding
             // panel from the App JPanel
             this.remove(centrePanel);
-            centrePanel.timer.stop();
 
         }
         if (audioUnit != null) { // if there has previously been an AudioUnit created, stop all the clips in it
@@ -119,12 +142,33 @@ public class App extends JPanel implements ActionListener {
         audioUnit = new AudioUnit();
         audioUnit.startBackgroundMusic();
         audioUnit.startAmbience();
-        board = new Board(file);
+        if (checkpointer != null) {
+            LOGGER.log(System.Logger.Level.DEBUG, "Autosave: {0}", checkpointer.getStats());
+        }
+        if (journal != null) {
+            journal.closeLater(); //finish writing the old autosave without waiting for it
+            journal = null;
+        }
+        session = new GameSession(file);
+        board = session.getBoard();
+        checkpointer = null;
+        if (autosave) {
+            try {
+                journal = new SaveJournal(AUTOSAVE, session.getEngine());
+                session.getEngine().addListener(journal);
+                checkpointer = new Checkpointer(session.getEngine(), journal);
+            } catch (IOException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Could not open the autosave journal", e);
+                checkpointer = new Checkpointer(session.getEngine(), AUTOSAVE);
+            }
+            session.getEngine().addListener(checkpointer);
+        }
+        // parse the next level while this one is played, so moving on does not wait for it
+        LevelCache.getShared().prefetch(
+                new File("LarryCroftsAdventures/levels/level" + (board.getLevel() + 1) + ".json"));
 
-        timer.stop();
-        timer = new Timer(1000, this);
-        timer.setInitialDelay(650);
-        timer.start();
+        clock.reset();
+        timer.restart();
 
         try {
             centrePanel = new Renderer(board, 9, audioUnit, this);
@@ -317,63 +361,20 @@ public class App extends JPanel implements ActionListener {
         // Handle movement based on 'direction'
         // Implement your move logic here
         if (!paused) {
-            System.out.println(direction);
             Chap chap = board.getChap();
             Renderer renderer = centrePanel;
             Camera camera = renderer.getCamera();
 
             if (camera.getState() == Camera.State.IDLE) {
-                switch (direction) {
-                    case "UP" -> {
-                        try {
-                            Tile tile = chap.move(Chap.Direction.UP);
-                            camera.setState(Camera.State.UP);
-                            renderer.playSound(tile);
-                            if (RecorderPanel.recording) {
-                                RecorderPanel.moves.add(new Move("UP", RecorderPanel.time));
-                            }
-                        } catch (IllegalMove ex) {
-                            System.out.println(ex.getMessage());
-                        }
-                    }
-                    case "DOWN" -> {
-                        try {
-                            Tile tile = chap.move(Chap.Direction.DOWN);
-                            camera.setState(Camera.State.DOWN);
-                            renderer.playSound(tile);
-                            if (RecorderPanel.recording) {
-                                RecorderPanel.moves.add(new Move("DOWN", RecorderPanel.time));
-                            }
-                        } catch (IllegalMove ex) {
-                            System.out.println(ex.getMessage());
-                        }
-                    }
-                    case "LEFT" -> {
-                        try {
-                            Tile tile = chap.move(Chap.Direction.LEFT);
-                            camera.setState(Camera.State.LEFT);
-                            renderer.playSound(tile);
-                            if (RecorderPanel.recording) {
-                                RecorderPanel.moves.add(new Move("LEFT", RecorderPanel.time));
-                            }
-                        } catch (IllegalMove ex) {
-                            System.out.println(ex.getMessage());
-                        }
-                    }
-                    case "RIGHT" -> {
-                        try {
-                            Tile tile = chap.move(Chap.Direction.RIGHT);
-                            camera.setState(Camera.State.RIGHT);
-                            renderer.playSound(tile);
-                            if (RecorderPanel.recording) {
-                                RecorderPanel.moves.add(new Move("RIGHT", RecorderPanel.time));
-                            }
-                        } catch (IllegalMove ex) {
-                            System.out.println(ex.getMessage());
-                        }
-                    }
-                    default -> {
-                    }
+                Chap.Direction chapDirection;
+                try {
+                    chapDirection = Chap.Direction.valueOf(direction);
+                } catch (IllegalArgumentException ex) {
+                    return;
+                }
+                if (session.move(chapDirection).moved()) {
+                    camera.setState(Camera.State.valueOf(direction));
+                    renderer.playSound(chap.getLastTile());
                 }
             }
 
@@ -383,60 +384,90 @@ public class App extends JPanel implements ActionListener {
     }
 
     /**
-     * Handles action events triggered by the timer.
+     * Plays a move of a replay. Unlike {@link #moveAction(String)} the move is
+     * never dropped: if the camera is still following the last move, it jumps to
+     * the player before this move starts
+     * @param move the move to play
+     */
+    public void replayMove(Move move) {
+        Renderer renderer = centrePanel;
+        Camera camera = renderer.getCamera();
+        if (camera.getState() != Camera.State.IDLE) {
+            renderer.centreCamera();
+        }
+        if (session.move(Chap.Direction.valueOf(move.move())).moved()) {
+            camera.setState(Camera.State.valueOf(move.move()));
+            renderer.playSound(board.getChap().getLastTile());
+        }
+        repaint();
+    }
+
+    /**
+     * Handles action events triggered by the timer. Runs every simulation tick
+     * that the clock says is due, moving the camera on each one and handling the
+     * countdown whenever a second of game time passes.
      *
      * @param e The ActionEvent object representing the timer event.
      */
     @Override
     public void actionPerformed(ActionEvent e) {
-        if (board != null) {
-            if (board.getChap().getState() == Chap.State.COMPLETED) {
-
-                int level = board.getChap().getBoard().getLevel();
-                if (level == 2) {
-                    int choice = JOptionPane.showOptionDialog(
-                            null,
-                            "Congratulations! You Win!\nDo you want to:",
-                            "Game Over",
-                            JOptionPane.YES_NO_OPTION,
-                            JOptionPane.INFORMATION_MESSAGE,
-                            null,
-                            new String[]{"Go back to Level 1", "Quit"},
-                            "default");
-
-                    if (choice == JOptionPane.YES_OPTION) {
-                        // Go back to Level 1
-                        setup(new File("LarryCroftsAdventures/levels/level1.json"));
-                    } else if (choice == JOptionPane.NO_OPTION) {
-                        // Quit the game
-                        System.exit(0);
-                    }
-                } else {
-                    level++;
-                    setup(new File("LarryCroftsAdventures/levels/level" + level + ".json"));
+        GameSession current = session;
+        for (int due = clock.advance(); due > 0 && session == current; due--) {
+            if (!paused && session.step()) {
+                secondElapsed();
+            }
+            if (session == current) {
+                centrePanel.step();
+            }
+        }
+    }
+
+    /**
+     * Updates the countdown once a second of game time has passed, and moves on
+     * to the next level or restarts this one when the level is over.
+     */
+    private void secondElapsed() {
+        if (board.getChap().getState() == Chap.State.COMPLETED) {
+            timer.stop();
+            int level = board.getLevel();
+            if (level == 2) {
+                int choice = JOptionPane.showOptionDialog(
+                        null,
+                        "Congratulations! You Win!\nDo you want to:",
+                        "Game Over",
+                        JOptionPane.YES_NO_OPTION,
+                        JOptionPane.INFORMATION_MESSAGE,
+                        null,
+                        new String[]{"Go back to Level 1", "Quit"},
+                        "default");
+
+                if (choice == JOptionPane.NO_OPTION) {
+                    // Quit the game
+                    System.exit(0);
                 }
+                // Go back to Level 1
+                setup(new File("LarryCroftsAdventures/levels/level1.json"));
+            } else {
+                level++;
+                setup(new File("LarryCroftsAdventures/levels/level" + level + ".json"));
             }
+            return;
         }
 
+        time = session.getEngine().getTimeLeft();
         if (time < 16) {
            if (timeLabel != null) {
                flashTimer();
            }
         }
 
-        if (time > 0 && !paused) {
-            time--;
-        } else {
-            // Handle game over or pause conditions
-            if (!paused) {
-                // Game is over
-                JOptionPane.showMessageDialog(null, "Time's up! Do you want to replay the current level?", "Game Over",
-                        JOptionPane.PLAIN_MESSAGE);
-                time = board.getTime();
-
-                // Pause the game
-                setup(new File("LarryCroftsAdventures/levels/level" + board.getChap().getBoard().getLevel() + ".json"));
-            }
+        if (board.getChap().getState() == Chap.State.DEAD) {
+            // Game is over
+            timer.stop();
+            JOptionPane.showMessageDialog(null, "Time's up! Do you want to replay the current level?", "Game Over",
+                    JOptionPane.PLAIN_MESSAGE);
+            setup(new File("LarryCroftsAdventures/levels/level" + board.getLevel() + ".json"));
+            return;
         }
 
         if(timeLabel!=null) {
@@ -464,7 +495,7 @@ public class App extends JPanel implements ActionListener {
      *
      * @return The Renderer object responsible for rendering the game board.
      */
-    public static Renderer getRenderer() {
+    public Renderer getRenderer() {
         return centrePanel;
     }
 
@@ -473,8 +504,26 @@ public class App extends JPanel implements ActionListener {
      *
      * @return The Board object representing the game board.
      */
-    public static Board getBoard() {
+    public Board getBoard() {
         return board;
     }
 
+    /**
+     * Gets the game session being played.
+     *
+     * @return The GameSession holding the board, timer and recorder state.
+     */
+    public GameSession getSession() {
+        return session;
+    }
+
+    /**
+     * Gets the cost of the autosave checkpoints taken of the game being played.
+     *
+     * @return The statistics, or null if the game is a replay, which is not autosaved.
+     */
+    public Checkpointer.Stats getAutosaveStats() {
+        return checkpointer == null ? null : checkpointer.getStats();
+    }
+
 }
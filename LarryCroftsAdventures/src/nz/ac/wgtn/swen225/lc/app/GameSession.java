@@ -0,0 +1,157 @@
+package nz.ac.wgtn.swen225.lc.app;
+
+import nz.ac.wgtn.swen225.lc.domain.Board;
+import nz.ac.wgtn.swen225.lc.domain.Chap;
+import nz.ac.wgtn.swen225.lc.domain.GameClock;
+import nz.ac.wgtn.swen225.lc.domain.GameEngine;
+import nz.ac.wgtn.swen225.lc.domain.MoveResult;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A single game being played: the board and its engine, the level timer and
+ * the recorder state. Sessions share no mutable state with each other, so many
+ * of them can run at once in one JVM, each confined to the thread that drives
+ * it. The Swing {@link App} is one client of a session.
+ */
+public class GameSession {
+    private final GameEngine engine;
+    private List<Move> moves = new ArrayList<>();
+    private Consumer<Move> sink;
+    private boolean recording;
+    private double time;
+
+    /**
+     * Create a new session for a level file.
+     *
+     * @param file the level or saved game to play
+     */
+    public GameSession(File file) {
+        this(new GameEngine(file));
+    }
+
+    /**
+     * Create a new session around an existing engine.
+     *
+     * @param engine the engine running the board
+     */
+    public GameSession(GameEngine engine) {
+        if (engine == null) {
+            throw new IllegalArgumentException();
+        }
+        this.engine = engine;
+    }
+
+    /**
+     * Attempt to move the player, recording the move if it went ahead and a
+     * recording is in progress. A recorded move is kept in memory, and is also
+     * handed to the sink if there is one.
+     *
+     * @param direction the direction to move the player
+     * @return the result of the move
+     */
+    public MoveResult move(Chap.Direction direction) {
+        MoveResult result = engine.move(direction);
+        if (result.moved() && recording) {
+            Move move = new Move(direction.name(), time);
+            moves.add(move);
+            if (sink != null) {
+                sink.accept(move);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Advance the session by one fixed tick of game time.
+     *
+     * @return true if a second of game time passed on this tick
+     */
+    public boolean step() {
+        boolean second = engine.step();
+        time = (double) engine.getTicks() / GameClock.TICKS_PER_SECOND;
+        return second;
+    }
+
+    /**
+     * Start a new recording, discarding any moves recorded before.
+     */
+    public void startRecording() {
+        startRecording(null);
+    }
+
+    /**
+     * Start a new recording that also hands each move to a sink as it is made,
+     * such as one that writes it straight to disk. The moves are still kept,
+     * so {@link #getMoves()} and saves made during the recording include them.
+     *
+     * @param sink the sink for the moves, or null for none
+     */
+    public void startRecording(Consumer<Move> sink) {
+        moves = new ArrayList<>();
+        this.sink = sink;
+        recording = true;
+    }
+
+    /**
+     * Stop recording.
+     *
+     * @return the moves recorded since the recording started
+     */
+    public List<Move> stopRecording() {
+        recording = false;
+        sink = null;
+        List<Move> recorded = moves;
+        moves = new ArrayList<>();
+        return recorded;
+    }
+
+    /**
+     * Check whether a recording is in progress.
+     *
+     * @return true if moves are being recorded
+     */
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Get the moves recorded so far.
+     *
+     * @return an unmodifiable view of the recorded moves
+     */
+    public List<Move> getMoves() {
+        return Collections.unmodifiableList(moves);
+    }
+
+    /**
+     * Get the game time that has passed in this session.
+     *
+     * @return the elapsed time in seconds
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Get the engine running this session.
+     *
+     * @return the engine
+     */
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Get the board being played.
+     *
+     * @return the board
+     */
+    public Board getBoard() {
+        return engine.getBoard();
+    }
+}
@@ -1,10 +1,15 @@
 package nz.ac.wgtn.swen225.lc.app;
 
+import nz.ac.wgtn.swen225.lc.domain.Board;
 import nz.ac.wgtn.swen225.lc.domain.Chap;
 import nz.ac.wgtn.swen225.lc.domain.items.Item;
 import nz.ac.wgtn.swen225.lc.domain.tiles.Tile;
 import nz.ac.wgtn.swen225.lc.persistency.Persistency;
+import nz.ac.wgtn.swen225.lc.recorder.MoveLog;
 import nz.ac.wgtn.swen225.lc.recorder.Recorder;
+import nz.ac.wgtn.swen225.lc.recorder.RecordingSink;
+import nz.ac.wgtn.swen225.lc.recorder.ReplayScheduler;
+import nz.ac.wgtn.swen225.lc.recorder.ReplaySource;
 
 import javax.swing.*;
 import javax.swing.border.Border;
@@ -18,9 +23,11 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Timer;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * RecorderPanel is a JPanel that provides recording and playback controls for the Larry Croft's Adventures game.
@@ -34,23 +41,36 @@ public class RecorderPanel extends JPanel {
     private JButton loadButton;
     private JButton stepButton;
     private JButton autoReplayButton;
+    private JButton fastForwardButton;
+    private JButton stepBackButton;
+    private JButton reverseButton;
     private JSlider replaySpeedSlider;
+    private JSlider timelineSlider;
+    private boolean movingTimeline; // set while the timeline follows the replay, so it does not seek
 
     /**
-     * ArrayList to store recorded game moves.
+     * The moves loaded for replay, read from the file as they are replayed.
      */
-    public static ArrayList<Move> moves;
+    private ReplaySource replayMoves;
 
     /**
-     * A boolean flag to indicate whether recording is in progress.
+     * The replay playing on its own, forwards or backwards, if any.
      */
-    public static boolean recording = false;
+    private ReplayScheduler autoReplay;
+    private javax.swing.Timer reverseReplay;
+
+    /**
+     * The recording in progress: the save of its starting state and the log its moves are streamed to.
+     */
+    private CompletableFuture<File> recordingState;
+    private File recordingFile;
+    private RecordingSink recordingSink;
+
     private boolean recordingIndicatorVisible = false; // Flag to control the visibility of the recording indicator
     private Timer recordingIndicatorTimer; // Timer for the recording indicator
-    public static int time;
-    public static int count = 0;
+    private int count = 0; // the number of recordings started from this panel
     File file = null;
-    public static App app;
+    private final App app;
     int chapX;
     int chapY;
     int chapTreasures;
@@ -67,7 +87,7 @@ public class RecorderPanel extends JPanel {
      * Constructs a RecorderPanel and initializes its components.
      */
     public RecorderPanel(App app) {
-        RecorderPanel.app = app;
+        this.app = app;
 
         initializeComponents();
         addComponentsToPanel();
@@ -83,14 +103,16 @@ public class RecorderPanel extends JPanel {
         loadButton = createSimpleButton("Load Recorded Game");
         stepButton = createSimpleButton("Step by Step");
         autoReplayButton = createSimpleButton("Auto Replay");
+        fastForwardButton = createSimpleButton("Fast Forward");
+        stepBackButton = createSimpleButton("Step Back");
+        reverseButton = createSimpleButton("Reverse");
 
         // Add action listeners to buttons
         recordButton.addActionListener(new ActionListener() {
 
             @Override
             public void actionPerformed(ActionEvent e) {
-                recording = !recording;
-                if (recording) {
+                if (!app.getSession().isRecording()) {
                     startRecording();
                 } else {
                     stopRecording();
@@ -115,7 +137,12 @@ public class RecorderPanel extends JPanel {
                 }
                 //getting the moves out of the loaded file
                 if (file != null) {
-                    moves = new Recorder().loadSave(file, app);
+                    stopReplay();
+                    if (replayMoves != null) {
+                        replayMoves.close();
+                    }
+                    replayMoves = new Recorder().openReplay(file, app);
+                    updateTimeline();
                 }
 
                 JOptionPane.showMessageDialog(null,
@@ -131,7 +158,9 @@ public class RecorderPanel extends JPanel {
             @Override
             public void actionPerformed(ActionEvent e) {
                 // Implement step-by-step logic here
-                Recorder.step(app, file, moves);
+                stopReplay();
+                Recorder.step(app, file, replayMoves);
+                updateTimeline();
             }
         });
         stepButton.setFocusable(false);
@@ -139,14 +168,47 @@ public class RecorderPanel extends JPanel {
         autoReplayButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                // Implement auto replay logic here
-                Recorder.auto(app, file, moves, speed);
-
+                // replay the moves at their recorded times, scaled by the speed slider
+                stopReplay();
+                autoReplay = Recorder.auto(app, file, replayMoves, speed, RecorderPanel.this::updateTimeline);
             }
         });
         autoReplayButton.setFocusable(false);
 
+        fastForwardButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                // jump straight to the end of the replay
+                stopReplay();
+                Recorder.fastForward(app, file, replayMoves);
+                updateTimeline();
+            }
+        });
+        fastForwardButton.setFocusable(false);
+
+        stepBackButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                // take back the last move replayed
+                stopReplay();
+                Recorder.stepBack(app, file, replayMoves);
+                updateTimeline();
+            }
+        });
+        stepBackButton.setFocusable(false);
+
+        reverseButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                // play the replay backwards at the speed set on the slider
+                stopReplay();
+                reverseReplay = Recorder.reverse(app, file, replayMoves, speed, RecorderPanel.this::updateTimeline);
+            }
+        });
+        reverseButton.setFocusable(false);
+
         addSlider();
+        addTimeline();
 
     }
 
@@ -189,8 +251,13 @@ public class RecorderPanel extends JPanel {
             @Override
             public void stateChanged(ChangeEvent e) {
                 speed = replaySpeedSlider.getValue();
-                // Use the 'speed' value to adjust the game's replay speed
-                // Implement your replay speed adjustment logic here
+                // a running replay changes speed straight away
+                if (autoReplay != null) {
+                    autoReplay.setSpeed(speed);
+                }
+                if (reverseReplay != null) {
+                    reverseReplay.setDelay(600 / speed);
+                }
 
             }
         });
@@ -198,16 +265,70 @@ public class RecorderPanel extends JPanel {
 
     }
 
+    /**
+     * adds the timeline slider, which jumps the replay to the move it is dragged to
+     */
+    private void addTimeline() {
+        timelineSlider = new JSlider(JSlider.HORIZONTAL, 0, 0, 0);
+        timelineSlider.setBackground(Color.WHITE);
+        timelineSlider.setBorder(new RoundedBorder(20));
+        timelineSlider.setToolTipText("Replay timeline");
+        timelineSlider.setEnabled(false);
+        timelineSlider.setFocusable(false);
+
+        timelineSlider.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                if (!movingTimeline && replayMoves != null) {
+                    stopReplay();
+                    replayMoves = Recorder.seek(app, file, replayMoves, timelineSlider.getValue());
+                }
+            }
+        });
+    }
+
+    /**
+     * stops the replay playing on its own, if there is one
+     */
+    private void stopReplay() {
+        if (autoReplay != null) {
+            autoReplay.stop();
+            autoReplay = null;
+        }
+        if (reverseReplay != null) {
+            reverseReplay.stop();
+            reverseReplay = null;
+        }
+    }
+
+    /**
+     * moves the timeline to where the replay is, and sizes it to the recording if its length is known
+     */
+    private void updateTimeline() {
+        if (replayMoves == null) {
+            return;
+        }
+        movingTimeline = true;
+        timelineSlider.setEnabled(replayMoves.size() >= 0);
+        timelineSlider.setMaximum(Math.max(replayMoves.size(), 0));
+        timelineSlider.setValue(replayMoves.position());
+        movingTimeline = false;
+    }
+
     /**
      * Adds UI components to the panel.
      */
     private void addComponentsToPanel() {
-        setLayout(new GridLayout(5, 1, 10, 10));
+        setLayout(new GridLayout(9, 1, 10, 10));
         add(recordButton);
         add(loadButton);
         add(stepButton);
+        add(stepBackButton);
         add(autoReplayButton);
+        add(reverseButton);
+        add(fastForwardButton);
         add(replaySpeedSlider);
+        add(timelineSlider);
     }
 
 
@@ -233,13 +354,13 @@ public class RecorderPanel extends JPanel {
     public void startRecording() {
         recordButton.setText("Stop Recording");
         count++;
-        Chap chap = App.getBoard().getChap();
+        Chap chap = app.getBoard().getChap();
         chapX = chap.getX();
         chapY = chap.getY();
         chapTreasures = chap.getPlayerTreasureCount();
-        boardTreasureCount = App.getBoard().getBoardTreasureCount();
-        chapInitLevel = App.getBoard().getLevel();
-        timeLeft = App.getBoard().getTime();
+        boardTreasureCount = app.getBoard().getBoardTreasureCount();
+        chapInitLevel = app.getBoard().getLevel();
+        timeLeft = app.getBoard().getTime();
 
         inventory = Arrays.stream(chap.getInventory())
                 .map(row -> Arrays.stream(row)
@@ -255,7 +376,7 @@ public class RecorderPanel extends JPanel {
                         .toArray(Item[]::new))
                 .toArray(Item[][]::new);
         // deep cloning the board
-        board = Arrays.stream(App.getBoard().getTiles())
+        board = Arrays.stream(app.getBoard().getTiles())
                 .map(row -> Arrays.stream(row)
                         .map(tile -> {
                             try {
@@ -267,9 +388,31 @@ public class RecorderPanel extends JPanel {
                         .toArray(Tile[]::new))
                 .toArray(Tile[][]::new);
 
-        moves = new ArrayList<>();
-
+        // the starting state is saved straight away and the moves are streamed to a log next to it,
+        // so a recording cut short by a crash can still be replayed
+        recordingState = saveRecordingState();
+        try {
+            recordingSink = new RecordingSink(MoveLog.logFor(recordingFile), recordingFile.getName());
+        } catch (IOException e) {
+            // keep the moves in memory and write them all when the recording stops
+            recordingSink = null;
+        }
+        app.getSession().startRecording(recordingSink);
+    }
 
+    /**
+     * saves the state the recording starts from, and remembers the file it goes to
+     * @return a future that completes with the save file once it is written
+     */
+    private CompletableFuture<File> saveRecordingState() {
+        Persistency p = new Persistency();
+        p.compressSaves = true; // recordings are archived, so keep them small
+        // the save holds the starting state and the moves go in a binary log next to it
+        p.setSaveParameters(count, List.of(), chapX, chapY, chapTreasures,
+                boardTreasureCount, chapInitLevel, timeLeft, board, inventory);
+        CompletableFuture<File> saved = p.saveGame("recorded-game-");
+        recordingFile = p.getSaveFile();
+        return saved;
     }
 
     // Helper method to stop recording and hide recording indicator
@@ -278,22 +421,36 @@ public class RecorderPanel extends JPanel {
         recordButton.setText("Record");
         recordingIndicatorVisible = false;
         repaint();
-        Chap chap = App.getBoard().getChap();
-
-        Persistency p = new Persistency();
-        p.setSaveParameters(count, moves, chapX, chapY, chapTreasures,
-                boardTreasureCount, chapInitLevel, timeLeft, board, inventory);
-        try {
-            p.saveGame("recorded-game-");
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
-        JOptionPane.showMessageDialog(null, "Game saved successfully!", "Save success", JOptionPane.INFORMATION_MESSAGE);
+        Chap chap = app.getBoard().getChap();
+
+        List<Move> moves = app.getSession().stopRecording();
+        RecordingSink sink = recordingSink;
+        CompletableFuture<File> state = recordingState == null ? saveRecordingState() : recordingState;
+        recordingSink = null;
+        recordingState = null;
+        state.thenApply(file -> {
+            try {
+                if (sink != null) {
+                    // the moves are already on disk, so only the keyframes are added
+                    sink.close();
+                    MoveLog.finish(sink.getFile(), new Board(file));
+                } else {
+                    MoveLog.write(MoveLog.logFor(file), file.getName(), moves, new Board(file));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return file;
+        }).whenComplete((file, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                JOptionPane.showMessageDialog(null, "The game could not be saved: " + error.getMessage(),
+                        "Save failed", JOptionPane.ERROR_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(null, "Game saved successfully!", "Save success",
+                        JOptionPane.INFORMATION_MESSAGE);
+            }
+        }));
 
-        if (!moves.isEmpty()) {
-            moves.clear();
-        }
         saveEndingInfo();
     }
 
@@ -301,15 +458,14 @@ public class RecorderPanel extends JPanel {
      * save the lastest info of the board and chap
      */
     public void saveEndingInfo() {
-        moves = new ArrayList<>();
-        Chap chap = App.getBoard().getChap();
+        Chap chap = app.getBoard().getChap();
         chapX = chap.getX();
         chapY = chap.getY();
         chapTreasures = chap.getPlayerTreasureCount();
-        boardTreasureCount = App.getBoard().getBoardTreasureCount();
-        chapInitLevel = App.getBoard().getLevel();
-        timeLeft = App.getBoard().getTime();
-        board = App.getBoard().getTiles().clone();
+        boardTreasureCount = app.getBoard().getBoardTreasureCount();
+        chapInitLevel = app.getBoard().getLevel();
+        timeLeft = app.getBoard().getTime();
+        board = app.getBoard().getTiles().clone();
         inventory = chap.getInventory().clone();
     }
 
@@ -318,7 +474,7 @@ public class RecorderPanel extends JPanel {
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
 
-        if (recording && recordingIndicatorVisible) {
+        if (app.getSession().isRecording() && recordingIndicatorVisible) {
             g.setColor(Color.RED);
             int radius = 10;
             int x = getWidth() / 2 - radius;
@@ -357,7 +513,7 @@ public class RecorderPanel extends JPanel {
         return count;
     }
 
-    public ArrayList<Move> getMovesList() {
-        return moves;
+    public List<Move> getMovesList() {
+        return app.getSession().getMoves();
     }
 }
@@ -1,15 +1,14 @@
 package nz.ac.wgtn.swen225.lc.app.input;
 
 import nz.ac.wgtn.swen225.lc.app.App;
-import nz.ac.wgtn.swen225.lc.app.Move;
 import nz.ac.wgtn.swen225.lc.recorder.Recorder;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Array;
-import java.util.ArrayList;
 
 /**
  * KeyboardInputHandler is a class responsible for handling keyboard input in
@@ -168,9 +167,14 @@ public class KeyboardInputHandler {
             if (retVal == JFileChooser.APPROVE_OPTION) {
                  file = fc.getSelectedFile();
             }
-            //getting the moves out of the loaded file
+            //setting the game up from the loaded file, the moves are not needed to resume
             if (file != null) {
-                ArrayList<Move> move = new Recorder().loadSave(file, component);
+                try {
+                    component.setup(Recorder.stateOf(file));
+                } catch (IOException ex) {
+                    JOptionPane.showMessageDialog(null, "The game could not be loaded: " + ex.getMessage(),
+                            "Load failed", JOptionPane.ERROR_MESSAGE);
+                }
             }
         }
     }
@@ -11,8 +11,7 @@ import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.event.*;
 import java.io.File;
-import java.io.IOException;
-import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The main class for Larry Croft's Adventures game.
@@ -200,28 +199,31 @@ public class Main extends JFrame {
 
 
         saveMenuItem.addActionListener((event) -> {
-            try {
-                // Get the current state of the game
-                int newFileNum = recorderPanel.getFileCount();
-                ArrayList<Move> actions = recorderPanel.getMovesList();
-                int playerX = App.getBoard().getChap().getX();
-                int playerY = App.getBoard().getChap().getY();
-                int playerTreasureCount = App.getBoard().getChap().getPlayerTreasureCount();
-                int boardTreasureCount = App.getBoard().getBoardTreasureCount() - playerTreasureCount;
-                int level = App.getBoard().getLevel();
-                int timeLeft = App.getBoard().getTime();
-                Tile[][] board = App.getBoard().getTiles();
-                Chap chap = App.getBoard().getChap();
-                // Set the parameters for saving
-                persistency.setSaveParameters(newFileNum, actions,
-                        playerX, playerY, playerTreasureCount,
-                        boardTreasureCount, level, timeLeft, board, chap.getInventory());
-
-                // Save the game
-                persistency.saveGame("saved-game-");
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+            // Get the current state of the game
+            int newFileNum = recorderPanel.getFileCount();
+            List<Move> actions = recorderPanel.getMovesList();
+            int playerX = applicationWindow.getBoard().getChap().getX();
+            int playerY = applicationWindow.getBoard().getChap().getY();
+            int playerTreasureCount = applicationWindow.getBoard().getChap().getPlayerTreasureCount();
+            int boardTreasureCount = applicationWindow.getBoard().getBoardTreasureCount() - playerTreasureCount;
+            int level = applicationWindow.getBoard().getLevel();
+            int timeLeft = applicationWindow.getBoard().getTime();
+            Tile[][] board = applicationWindow.getBoard().getTiles();
+            Chap chap = applicationWindow.getBoard().getChap();
+            // Set the parameters for saving
+            persistency.setSaveParameters(newFileNum, actions,
+                    playerX, playerY, playerTreasureCount,
+                    boardTreasureCount, level, timeLeft, board, chap.getInventory());
+
+            // Save the game in the background
+            persistency.saveGame("saved-game-").whenComplete((file, error) -> SwingUtilities.invokeLater(() -> {
+                if (error != null) {
+                    JOptionPane.showMessageDialog(null, "The game could not be saved: " + error.getMessage(),
+                            "Save failed", JOptionPane.ERROR_MESSAGE);
+                } else {
+                    System.out.println("Game saved...");
+                }
+            }));
         });
 
 
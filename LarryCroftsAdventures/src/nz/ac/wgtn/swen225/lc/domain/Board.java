@@ -1,65 +1,89 @@
 package nz.ac.wgtn.swen225.lc.domain;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import nz.ac.wgtn.swen225.lc.domain.items.Item;
 import nz.ac.wgtn.swen225.lc.domain.tiles.*;
 import nz.ac.wgtn.swen225.lc.persistency.AutoActor;
 import nz.ac.wgtn.swen225.lc.persistency.Persistency;
 
 /**
- * Represents the board for a given level.
+ * Represents the board for a given level. Cells are stored compactly as one
+ * {@link TileKind} code per byte, with a small side table for the messages of
+ * information fields, and are viewed through shared flyweight tiles.
  * 
  * @author Anthony Kendrew (300607402)
  */
 public class Board {
 	private List<AutoActor> autoActors;
-	private Tile[][] board;
+	private final byte[] cells;
+	private final int width;
+	private final int height;
+	private final Map<Integer, String> messages = new HashMap<>();
 	private final Chap chap;
 	private int time;
 	private final int level;
 	private final int boardTreasureCount;
 
 	/**
-	 * Create a new Board. Generates a 2D array of tiles using
-	 * {@link Persistency#loadGame(File) loadGame}.
+	 * Create a new Board. The layout is parsed by
+	 * {@link Persistency#loadBoard(File) loadBoard} the first time a file is
+	 * used, and copied from the {@link LevelCache} after that.
 	 */
 	public Board(File file) {
-		this.autoActors = new ArrayList<>();
-		Persistency persistency = new Persistency();
-		try {
-			board = persistency.loadGame(file);
-			autoActors = persistency.getActors();
-		} catch (FileNotFoundException e) {
-			System.err.println("File not found: " + e.getMessage());
-		} catch (Exception e) {
-			System.err.println("An error occurred while loading the game: " + e.getMessage());
-		}
-		time = persistency.timeLeft;
-		boardTreasureCount = persistency.boardTreasureCount;
-		level = persistency.level;
-		int startX = persistency.playerX;
-		int startY = persistency.playerY;
-		Free playerTile = new Free(startX, startY);
-		board[startX][startY] = playerTile;
-		chap = new Chap(this, playerTile, persistency.playerTreasureCount);
-		chap.setInventory(persistency.invent);
+		this(LevelCache.getShared().get(file));
+	}
+
+	/**
+	 * Create a new Board from a parsed layout. The board gets its own copy of
+	 * the cells, enemies and inventory, so the template is left unchanged.
+	 */
+	public Board(LevelTemplate template) {
+		cells = template.copyCells();
+		width = template.getWidth();
+		height = template.getHeight();
+		messages.putAll(template.getMessages());
+		autoActors = template.copyActors();
+		time = template.getTime();
+		boardTreasureCount = template.getBoardTreasureCount();
+		level = template.getLevel();
+		chap = new Chap(this, new Free(template.getPlayerX(), template.getPlayerY()),
+				template.getPlayerTreasureCount());
+		chap.setInventory(template.copyInventory());
+	}
+
+	/**
+	 * Get the position of a cell in the cell array.
+	 */
+	private int index(int x, int y) {
+		return y * width + x;
 	}
 
 	/**
-	 * Reset the given tile to a free tile.
+	 * Reset the tile at the given position to a free tile.
 	 * 
-	 * @param tile the tile to reset
-	 * @return the new tile that has been reset
+	 * @param x position horizontally
+	 * @param y position vertically
+	 * @return the free tile that the position now holds
+	 */
+	protected Free resetTile(int x, int y) {
+		cells[index(x, y)] = TileKind.FREE.code();
+		return (Free) TileKind.FREE.flyweight();
+	}
+
+	/**
+	 * Set the kind of tile at the given position, such as to put back a tile
+	 * that a move reset.
+	 *
+	 * @param x    position horizontally
+	 * @param y    position vertically
+	 * @param kind the kind of tile
 	 */
-	protected Free resetTile(Tile tile) {
-		int x = tile.getX();
-		int y = tile.getY();
-		Free freeTile = new Free(x, y);
-		board[x][y] = freeTile;
-		return freeTile;
+	void setKind(int x, int y, TileKind kind) {
+		cells[index(x, y)] = kind.code();
 	}
 
 	/**
@@ -72,24 +96,115 @@ public class Board {
 	}
 
 	/**
-	 * Get a tile at the specified coordinates.
+	 * Get a tile at the specified coordinates. The tile is the shared flyweight
+	 * for its kind, so its own position is not meaningful.
 	 * 
 	 * @param x position horizontally
 	 * @param y position vertically
 	 * @return the tile
+	 * @throws IndexOutOfBoundsException if the position is outside the board
 	 */
 	public Tile getTile(int x, int y) {
-		return board[x][y];
+		return getKind(x, y).flyweight();
+	}
+
+	/**
+	 * Get the kind of tile at the specified coordinates.
+	 *
+	 * @param x position horizontally
+	 * @param y position vertically
+	 * @return the kind of tile
+	 * @throws IndexOutOfBoundsException if the position is outside the board
+	 */
+	public TileKind getKind(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height) {
+			throw new IndexOutOfBoundsException("(" + x + ", " + y + ")");
+		}
+		return TileKind.fromCode(cells[index(x, y)]);
 	}
 
 	/**
-	 * Get all tiles on the board.
+	 * Get the message of the information field at the specified coordinates.
+	 *
+	 * @param x position horizontally
+	 * @param y position vertically
+	 * @return the message, or null if there is none
+	 */
+	public String getMessage(int x, int y) {
+		return messages.get(index(x, y));
+	}
+
+	/**
+	 * Get all tiles on the board. Each call builds a new array of positioned
+	 * tiles, so it should be avoided on hot paths.
 	 * 
 	 * @return 2D array of the tiles
 	 */
 	public Tile[][] getTiles() {
-		return board;
+		Tile[][] tiles = new Tile[width][height];
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				tiles[x][y] = TileKind.fromCode(cells[index(x, y)]).create(x, y);
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * Get a copy of the cells, one {@link TileKind} code per cell in row-major
+	 * order. This is much cheaper than {@link #getTiles()}.
+	 *
+	 * @return the cell codes
+	 */
+	public byte[] copyCells() {
+		return cells.clone();
 	}
+
+	/**
+	 * Put the board and the player back into a state taken earlier, such as a
+	 * keyframe of a replay. The cells are copied, so the caller keeps its array.
+	 *
+	 * @param cells               the cell codes in row-major order
+	 * @param playerX             the x position of the player
+	 * @param playerY             the y position of the player
+	 * @param playerTreasureCount the number of treasures the player has collected
+	 * @param state               the state of the player
+	 * @param inventory           the items the player holds, where empty slots are null
+	 * @throws IllegalArgumentException if the cells are not the size of the board or
+	 *                                  the player is not on a free tile
+	 */
+	public void restore(byte[] cells, int playerX, int playerY, int playerTreasureCount, Chap.State state,
+			Item[][] inventory) {
+		if (cells.length != this.cells.length || playerX < 0 || playerX >= width || playerY < 0
+				|| playerY >= height) {
+			throw new IllegalArgumentException();
+		}
+		if (!(TileKind.fromCode(cells[index(playerX, playerY)]).flyweight() instanceof Free)) {
+			throw new IllegalArgumentException("The player must stand on a free tile");
+		}
+		System.arraycopy(cells, 0, this.cells, 0, cells.length);
+		chap.restore(playerX, playerY, playerTreasureCount, state);
+		chap.setInventory(inventory);
+	}
+
+	/**
+	 * Get the width of the board.
+	 *
+	 * @return the number of columns
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Get the height of the board.
+	 *
+	 * @return the number of rows
+	 */
+	public int getHeight() {
+		return height;
+	}
+
 	/**
 	 * Get the player.
 	 * 
@@ -1,6 +1,9 @@
 package nz.ac.wgtn.swen225.lc.domain;
 
 import nz.ac.wgtn.swen225.lc.domain.items.Item;
+import nz.ac.wgtn.swen225.lc.domain.items.Key;
+import nz.ac.wgtn.swen225.lc.domain.tiles.Door;
+import nz.ac.wgtn.swen225.lc.domain.tiles.ExitLock;
 import nz.ac.wgtn.swen225.lc.domain.tiles.Free;
 import nz.ac.wgtn.swen225.lc.domain.tiles.InfoField;
 import nz.ac.wgtn.swen225.lc.domain.tiles.Tile;
@@ -11,9 +14,11 @@ import nz.ac.wgtn.swen225.lc.domain.tiles.Tile;
  * @author Anthony Kendrew (300607402)
  */
 public class Chap {
-    private Item[][] inventory = new Item[2][4];
+    private final Inventory inventory = new Inventory();
     private final Board board;
-    private Free tile;
+    private int x;
+    private int y;
+    private Tile lastTile;
     private int playerTreasureCount;
     private State state;
 
@@ -37,7 +42,8 @@ public class Chap {
             throw new IllegalArgumentException();
         }
         this.board = board;
-        this.tile = tile;
+        this.x = tile.getX();
+        this.y = tile.getY();
         this.playerTreasureCount = playerTreasureCount;
         this.state = State.ONGOING;
     }
@@ -46,42 +52,91 @@ public class Chap {
      * Move the character on the board one square in the specified direction.
      *
      * @param direction the direction to move the character
-     * @return the tile that the player moved to (before it was reset to a free tile)
-     * @throws IllegalMove if the tile to the given direction is not traversable or
-     *                     the edge of the board is encountered
+     * @return the tile that the player moved to (before it was reset to a free tile),
+     * which is a shared flyweight as described at {@link #getLastTile()}
+     * @throws IllegalMove if the tile to the given direction is not traversable,
+     *                     the edge of the board is encountered or the key there
+     *                     cannot be picked up
      */
     public Tile move(Direction direction) throws IllegalMove {
-        if (!state.equals(State.ONGOING)) {
-            throw new IllegalMove("Cannot move when the game is not ongoing");
+        return switch (tryMove(direction)) {
+            case MOVED -> lastTile;
+            case NOT_ONGOING -> throw new IllegalMove("Cannot move when the game is not ongoing");
+            case EDGE -> throw new IllegalMove("Encountered the edge of the board: " + direction);
+            case INVENTORY_FULL -> throw new IllegalMove("The inventory is full: " + direction);
+            default -> throw new IllegalMove("Not traversable: " + direction);
+        };
+    }
+
+    /**
+     * Attempt to move the character one square in the specified direction without
+     * throwing when the move is blocked. This allocates nothing, so it is suited
+     * to callers that attempt many moves, such as bots and replays.
+     * <p>
+     * A key tile that cannot be picked up because the inventory is full blocks
+     * the move, giving {@link MoveResult#INVENTORY_FULL}.
+     *
+     * @param direction the direction to move the character
+     * @return the result of the move; when it is {@link MoveResult#MOVED} the tile
+     * that was entered is available from {@link #getLastTile()}
+     */
+    public MoveResult tryMove(Direction direction) {
+        if (state != State.ONGOING) {
+            return MoveResult.NOT_ONGOING;
+        }
+        int nextX = x;
+        int nextY = y;
+        switch (direction) {
+            case UP -> nextY--;
+            case DOWN -> nextY++;
+            case LEFT -> nextX--;
+            case RIGHT -> nextX++;
         }
-        Tile next;
-        int x = tile.getX();
-        int y = tile.getY();
-        try {
-            next = switch (direction) {
-                case UP -> board.getTile(x, y - 1);
-                case DOWN -> board.getTile(x, y + 1);
-                case LEFT -> board.getTile(x - 1, y);
-                case RIGHT -> board.getTile(x + 1, y);
-            };
-        } catch (IndexOutOfBoundsException e) {
-            throw new IllegalMove("Encountered the edge of the board: " + direction);
+        if (nextX < 0 || nextX >= board.getWidth() || nextY < 0 || nextY >= board.getHeight()) {
+            return MoveResult.EDGE;
         }
 
+        Tile next = board.getTile(nextX, nextY);
         if (!next.traversable(this)) {
-            throw new IllegalMove("Not traversable: " + direction);
+            if (next instanceof Door) {
+                return MoveResult.LOCKED_DOOR;
+            }
+            if (next instanceof ExitLock) {
+                return MoveResult.EXIT_LOCKED;
+            }
+            return MoveResult.WALL;
         }
 
         // Move Chap to the next tile and set the tile to a Free
         if (next.performTileAction(this)) {
-            tile = board.resetTile(next);
+            board.resetTile(nextX, nextY);
+            x = nextX;
+            y = nextY;
         }
         // Move Chap to the next tile but don't reset it
-        else if (next instanceof InfoField infoField) {
-            tile = infoField;
+        else if (next instanceof InfoField) {
+            x = nextX;
+            y = nextY;
+        }
+        // The only other tile whose action can fail is a key with no room for it
+        else {
+            return MoveResult.INVENTORY_FULL;
         }
         assert board.getTile(x, y) instanceof Free;
-        return next;
+        lastTile = next;
+        return MoveResult.MOVED;
+    }
+
+    /**
+     * Get the tile that the player last entered, before it was reset to a free
+     * tile. The tile is the shared flyweight for its kind, so only its kind
+     * and colour are meaningful; its position is not where it was, so use
+     * {@link #getX()} and {@link #getY()} for that.
+     *
+     * @return the last tile entered, or null if the player has not moved yet
+     */
+    public Tile getLastTile() {
+        return lastTile;
     }
 
     /**
@@ -91,15 +146,7 @@ public class Chap {
      * @return true if successful, false if the player's inventory is full
      */
     public boolean addItem(Item item) {
-        for (int i = 0; i < inventory.length; i++) {
-            for (int j = 0; j < inventory[i].length; j++) {
-                if (inventory[i][j] == null) {
-                    inventory[i][j] = item;
-                    return true;
-                }
-            }
-        }
-        return false;
+        return item instanceof Key key && inventory.addKey(key.colour());
     }
 
     /**
@@ -110,15 +157,7 @@ public class Chap {
      * inventory
      */
     public boolean removeItem(Item item) {
-        for (int i = 0; i < inventory.length; i++) {
-            for (int j = 0; j < inventory[i].length; j++) {
-                if (inventory[i][j] != null && inventory[i][j].equals(item)) {
-                    inventory[i][j] = null;
-                    return true;
-                }
-            }
-        }
-        return false;
+        return item instanceof Key key && inventory.useKey(key.colour());
     }
 
     /**
@@ -128,14 +167,47 @@ public class Chap {
      * @return true if the player has the item, false otherwise
      */
     public boolean hasItem(Item item) {
-        for (int i = 0; i < inventory.length; i++) {
-            for (int j = 0; j < inventory[i].length; j++) {
-                if (inventory[i][j] != null && inventory[i][j].equals(item)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return item instanceof Key key && inventory.hasKey(key.colour());
+    }
+
+    /**
+     * Add a key of the given colour to the player's inventory.
+     *
+     * @param colour the colour of the key
+     * @return true if successful, false if the player's inventory is full
+     */
+    public boolean addKey(Key.Colour colour) {
+        return inventory.addKey(colour);
+    }
+
+    /**
+     * Remove a key of the given colour from the player's inventory.
+     *
+     * @param colour the colour of the key
+     * @return true if successful, false if the player has no key of that colour
+     */
+    public boolean useKey(Key.Colour colour) {
+        return inventory.useKey(colour);
+    }
+
+    /**
+     * Check if the player has a key of the given colour.
+     *
+     * @param colour the colour of the key
+     * @return true if the player has the key, false otherwise
+     */
+    public boolean hasKey(Key.Colour colour) {
+        return inventory.hasKey(colour);
+    }
+
+    /**
+     * Get the number of keys of the given colour that the player is holding.
+     *
+     * @param colour the colour of the key
+     * @return the number of keys
+     */
+    public int getKeyCount(Key.Colour colour) {
+        return inventory.getKeyCount(colour);
     }
 
     /**
@@ -169,6 +241,26 @@ public class Chap {
         return state;
     }
 
+    /**
+     * Put the player back at an earlier position and treasure count, as when a
+     * replay jumps to an earlier or later move.
+     *
+     * @param x                   the x position
+     * @param y                   the y position
+     * @param playerTreasureCount the number of treasures collected
+     * @param state               the state of the player
+     */
+    void restore(int x, int y, int playerTreasureCount, State state) {
+        if (playerTreasureCount < 0 || state == null) {
+            throw new IllegalArgumentException();
+        }
+        this.x = x;
+        this.y = y;
+        this.playerTreasureCount = playerTreasureCount;
+        this.state = state;
+        lastTile = null;
+    }
+
     /**
      * Increment the treasure counter by one.
      */
@@ -177,12 +269,13 @@ public class Chap {
     }
 
     /**
-     * Get the tile the player is standing on.
+     * Get the tile the player is standing on. This is the board's shared tile
+     * for that kind, so use {@link #getX()} and {@link #getY()} for the position.
      *
      * @return the tile
      */
     public Free getTile() {
-        return tile;
+        return (Free) board.getTile(x, y);
     }
 
     /**
@@ -191,7 +284,7 @@ public class Chap {
      * @return x position
      */
     public int getX() {
-        return tile.getX();
+        return x;
     }
 
     /**
@@ -200,23 +293,29 @@ public class Chap {
      * @return y position
      */
     public int getY() {
-        return tile.getY();
+        return y;
     }
 
     /**
-     * Get the player's inventory.
+     * Get the player's inventory as a grid of slots. The grid must not be
+     * modified; use the add and remove methods instead.
      *
      * @return the player's inventory
      */
     public Item[][] getInventory() {
-        return inventory;
+        return inventory.getItems();
     }
 
+    /**
+     * Replace the player's inventory with the items in a grid.
+     *
+     * @param inv the items, where empty slots are null
+     */
     public void setInventory(Item[][] inv) {
         if (inv == null) {
             throw new IllegalArgumentException();
         }
-        this.inventory = inv;
+        inventory.setItems(inv);
     }
 
     /**
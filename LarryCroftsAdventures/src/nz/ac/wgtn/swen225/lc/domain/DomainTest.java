@@ -1,5 +1,13 @@
 package nz.ac.wgtn.swen225.lc.domain;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+import nz.ac.wgtn.swen225.lc.domain.items.Item;
 import nz.ac.wgtn.swen225.lc.domain.items.Key;
 import nz.ac.wgtn.swen225.lc.domain.tiles.*;
 import nz.ac.wgtn.swen225.lc.persistency.Persistency;
@@ -27,7 +35,28 @@ public class DomainTest {
 
     @Test
     public void testBoard() {
+        Board board = chap.getBoard();
+        assertEquals(15, board.getWidth());
+        assertEquals(15, board.getHeight());
+        assertThrows(IndexOutOfBoundsException.class, () -> board.getTile(-1, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> board.getTile(0, board.getHeight()));
+    }
 
+    @Test
+    public void testTilesAreSharedFlyweights() {
+        Board board = chap.getBoard();
+        assertSame(board.getTile(chap.getX(), chap.getY()), board.getTile(0, 0));
+        assertSame(TileKind.FREE.flyweight(), board.getTile(0, 0));
+        Tile[][] tiles = board.getTiles();
+        assertEquals(2, tiles[2][0].getX());
+        assertSame(board.getKind(2, 0), TileKind.of(tiles[2][0]));
+    }
+
+    @Test
+    public void testPickUpResetsCell() {
+        assertSame(TileKind.KEY_RED, chap.getBoard().getKind(chap.getX() + 2, chap.getY() - 1));
+        testPickUpKey();
+        assertSame(TileKind.FREE, chap.getBoard().getKind(chap.getX(), chap.getY()));
     }
 
     @Test
@@ -115,6 +144,17 @@ public class DomainTest {
         assertFalse(chap.hasItem(new Key(Key.Colour.RED)));
     }
 
+    @Test
+    public void testOpeningDoorSpendsKey() {
+        testPickUpKey();
+        assertTrue(chap.addKey(Key.Colour.RED));
+        assertEquals(2, chap.getKeyCount(Key.Colour.RED));
+        assertDoesNotThrow(() -> chap.move(Chap.Direction.UP));
+        assertSame(MoveResult.MOVED, chap.tryMove(Chap.Direction.RIGHT));
+        assertEquals(1, chap.getKeyCount(Key.Colour.RED));
+        assertTrue(chap.getBoard().getTile(chap.getX(), chap.getY()) instanceof Free);
+    }
+
     @Test
     public void testCannotOpenDoor() {
         assertDoesNotThrow(() -> chap.move(Chap.Direction.UP));
@@ -155,6 +195,27 @@ public class DomainTest {
         assertFalse(chap.addItem(new Key(Key.Colour.RED)));
     }
 
+    @Test
+    public void testInventoryGridView() {
+        chap.addKey(Key.Colour.RED);
+        chap.addKey(Key.Colour.BLUE);
+        Item[][] items = chap.getInventory();
+        assertEquals(Key.of(Key.Colour.BLUE), items[0][0]);
+        assertEquals(Key.of(Key.Colour.RED), items[0][1]);
+        assertNull(items[0][2]);
+        assertTrue(chap.useKey(Key.Colour.BLUE));
+        assertEquals(Key.of(Key.Colour.RED), chap.getInventory()[0][0]);
+    }
+
+    @Test
+    public void testSetInventory() {
+        Item[][] items = new Item[2][4];
+        items[1][3] = new Key(Key.Colour.GREEN);
+        chap.setInventory(items);
+        assertTrue(chap.hasKey(Key.Colour.GREEN));
+        assertFalse(chap.hasKey(Key.Colour.RED));
+    }
+
     @Test
     public void testEmptyInventory() {
         assertFalse(chap.removeItem(new Key(Key.Colour.RED)));
@@ -166,6 +227,136 @@ public class DomainTest {
         assertThrows(IllegalMove.class, () -> chap.move(Chap.Direction.UP));
     }
 
+    @Test
+    public void testTryMoveResults() {
+        assertSame(MoveResult.MOVED, chap.tryMove(Chap.Direction.LEFT));
+        assertSame(MoveResult.MOVED, chap.tryMove(Chap.Direction.LEFT));
+        assertSame(MoveResult.WALL, chap.tryMove(Chap.Direction.LEFT));
+        chap.setState(Chap.State.PAUSED);
+        assertSame(MoveResult.NOT_ONGOING, chap.tryMove(Chap.Direction.RIGHT));
+    }
+
+    @Test
+    public void testTryMoveLockedDoor() {
+        assertSame(MoveResult.MOVED, chap.tryMove(Chap.Direction.DOWN));
+        assertSame(MoveResult.MOVED, chap.tryMove(Chap.Direction.DOWN));
+        assertSame(MoveResult.MOVED, chap.tryMove(Chap.Direction.RIGHT));
+        assertSame(MoveResult.MOVED, chap.tryMove(Chap.Direction.RIGHT));
+        int x = chap.getX();
+        assertSame(MoveResult.LOCKED_DOOR, chap.tryMove(Chap.Direction.RIGHT));
+        assertEquals(x, chap.getX());
+    }
+
+    @Test
+    public void testTryMoveInventoryFull() {
+        while (chap.addKey(Key.Colour.BLUE)) {
+            // fill the inventory
+        }
+        assertSame(MoveResult.MOVED, chap.tryMove(Chap.Direction.RIGHT));
+        assertSame(MoveResult.MOVED, chap.tryMove(Chap.Direction.RIGHT));
+        int x = chap.getX();
+        int y = chap.getY();
+        assertSame(MoveResult.INVENTORY_FULL, chap.tryMove(Chap.Direction.UP));
+        assertFalse(MoveResult.INVENTORY_FULL.moved());
+        assertEquals(x, chap.getX());
+        assertEquals(y, chap.getY());
+        assertTrue(chap.getBoard().getTile(x, y - 1) instanceof KeyTile);
+        assertThrows(IllegalMove.class, () -> chap.move(Chap.Direction.UP));
+    }
+
+    @Test
+    public void testTryMoveExitLocked() {
+        assertSame(MoveResult.MOVED, chap.tryMove(Chap.Direction.UP));
+        assertSame(MoveResult.MOVED, chap.tryMove(Chap.Direction.UP));
+        assertSame(MoveResult.EXIT_LOCKED, chap.tryMove(Chap.Direction.UP));
+    }
+
+    @Test
+    public void testTryMoveReportsEnteredTile() {
+        assertSame(MoveResult.MOVED, chap.tryMove(Chap.Direction.RIGHT));
+        assertSame(MoveResult.MOVED, chap.tryMove(Chap.Direction.RIGHT));
+        assertTrue(chap.getLastTile() instanceof Treasure);
+    }
+
+    @Test
+    public void testEngineMovesAndReports() {
+        GameEngine engine = new GameEngine(chap.getBoard());
+        int[] treasures = new int[1];
+        engine.setListener(new GameEngine.Listener() {
+            @Override
+            public void moved(Chap.Direction direction, MoveResult result, Tile entered) {
+                if (entered instanceof Treasure) {
+                    treasures[0]++;
+                }
+            }
+        });
+        assertSame(MoveResult.MOVED, engine.move(Chap.Direction.RIGHT));
+        assertSame(MoveResult.MOVED, engine.move(Chap.Direction.RIGHT));
+        assertEquals(1, treasures[0]);
+        assertEquals(1, engine.getChap().getPlayerTreasureCount());
+    }
+
+    @Test
+    public void testEngineAddListener() {
+        GameEngine engine = new GameEngine(chap.getBoard());
+        int[] calls = new int[2];
+        engine.setListener(new GameEngine.Listener() {
+            @Override
+            public void timeChanged(int timeLeft) {
+                calls[0]++;
+            }
+        });
+        engine.addListener(new GameEngine.Listener() {
+            @Override
+            public void timeChanged(int timeLeft) {
+                calls[1]++;
+            }
+        });
+        engine.tick();
+        assertArrayEquals(new int[]{1, 1}, calls);
+    }
+
+    @Test
+    public void testEngineTimerRunsOut() {
+        GameEngine engine = new GameEngine(chap.getBoard());
+        int time = engine.getTimeLeft();
+        for (int i = 0; i < time; i++) {
+            assertFalse(engine.isOver());
+            engine.tick();
+        }
+        assertEquals(0, engine.getTimeLeft());
+        assertSame(Chap.State.DEAD, chap.getState());
+        assertSame(MoveResult.NOT_ONGOING, engine.move(Chap.Direction.UP));
+    }
+
+    @Test
+    public void testClockCountsWholeTicks() {
+        long[] now = {0};
+        GameClock clock = new GameClock(() -> now[0]);
+        now[0] = GameClock.TICK_NANOS * 3 + GameClock.TICK_NANOS / 2;
+        assertEquals(3, clock.advance());
+        now[0] += GameClock.TICK_NANOS / 2;
+        assertEquals(1, clock.advance());
+        assertEquals(0, clock.advance());
+        now[0] += GameClock.TICK_NANOS * 1000;
+        assertEquals(GameClock.MAX_TICKS_PER_ADVANCE, clock.advance());
+        assertEquals(0, clock.advance());
+    }
+
+    @Test
+    public void testEngineStepsCountDownOnFakeClock() {
+        long[] now = {0};
+        GameClock clock = new GameClock(() -> now[0]);
+        GameEngine engine = new GameEngine(chap.getBoard());
+        int time = engine.getTimeLeft();
+        for (int i = 0; i < GameClock.TICKS_PER_SECOND * 2; i++) {
+            now[0] += GameClock.TICK_NANOS;
+            engine.advance(clock);
+        }
+        assertEquals(time - 2, engine.getTimeLeft());
+        assertEquals(GameClock.TICKS_PER_SECOND * 2, engine.getTicks());
+    }
+
     @Test
     public void testCloneWall() throws CloneNotSupportedException {
         Wall tile1 = new Wall(0, 0);
@@ -258,4 +449,120 @@ public class DomainTest {
         assertDoesNotThrow(() -> chap.move(Chap.Direction.UP));
         assertTrue(chap.getTile() instanceof InfoField);
     }
+
+    @Test
+    public void testLevelCacheSharesTemplate() {
+        LevelCache cache = new LevelCache();
+        assertSame(cache.get(Persistency.level1), cache.get(Persistency.level1));
+    }
+
+    @Test
+    public void testBoardsFromTemplateAreIndependent() {
+        LevelTemplate template = LevelCache.getShared().get(Persistency.level1);
+        Board first = new Board(template);
+        Board second = new Board(template);
+        assertDoesNotThrow(() -> first.getChap().move(Chap.Direction.UP));
+        assertDoesNotThrow(() -> first.getChap().move(Chap.Direction.RIGHT));
+        assertDoesNotThrow(() -> first.getChap().move(Chap.Direction.RIGHT));
+        assertTrue(first.getChap().hasKey(Key.Colour.RED));
+        assertFalse(second.getChap().hasKey(Key.Colour.RED));
+        assertEquals(TileKind.FREE, first.getKind(9, 5));
+        assertEquals(TileKind.KEY_RED, second.getKind(9, 5));
+        assertEquals(TileKind.KEY_RED, new Board(Persistency.level1).getKind(9, 5));
+        assertNotSame(first.getAutoActors(), second.getAutoActors());
+    }
+
+    @Test
+    public void testLevelCacheReloadsChangedFile() throws IOException {
+        File file = File.createTempFile("level", ".json");
+        file.deleteOnExit();
+        Files.copy(Persistency.level1.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        file.setLastModified(1_000_000L);
+        LevelCache cache = new LevelCache();
+        LevelTemplate first = cache.get(file);
+        assertSame(first, cache.get(file));
+        Files.copy(Persistency.level2.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        file.setLastModified(2_000_000L);
+        LevelTemplate second = cache.get(file);
+        assertNotSame(first, second);
+        assertEquals(2, second.getLevel());
+    }
+
+    @Test
+    public void testLevelCachePrefetch() {
+        LevelCache cache = new LevelCache();
+        cache.prefetch(Persistency.level2);
+        assertEquals(30, cache.get(Persistency.level2).getWidth());
+        assertThrows(UncheckedIOException.class, () -> cache.get(new File("missing.json")));
+    }
+
+    @Test
+    public void testEngineUndo() {
+        GameEngine engine = new GameEngine(chap.getBoard());
+        assertFalse(engine.undo());
+        engine.setHistory(new MoveHistory());
+        engine.move(Chap.Direction.RIGHT);
+        engine.move(Chap.Direction.RIGHT);
+        engine.move(Chap.Direction.UP);
+        assertEquals(1, chap.getPlayerTreasureCount());
+        assertTrue(chap.hasKey(Key.Colour.RED));
+        assertTrue(engine.undo());
+        assertSame(TileKind.KEY_RED, chap.getBoard().getKind(9, 5));
+        assertFalse(chap.hasKey(Key.Colour.RED));
+        assertTrue(engine.undo());
+        assertSame(TileKind.TREASURE, chap.getBoard().getKind(9, 6));
+
+        assertEquals(8, chap.getX());
+
+        // a blocked move is kept as a step that changes nothing, so undo stays in step with the moves
+        while (engine.move(Chap.Direction.UP).moved()) {
+        }
+        int x = chap.getX();
+        int y = chap.getY();
+        int size = engine.getHistory().size();
+        assertFalse(engine.move(Chap.Direction.UP).moved());
+        assertEquals(size + 1, engine.getHistory().size());
+        assertTrue(engine.undo());
+        assertEquals(x, chap.getX());
+        assertEquals(y, chap.getY());
+
+        Random random = new Random(5);
+        Chap.Direction[] directions = new Chap.Direction[2000];
+        for (int i = 0; i < directions.length; i++) {
+            directions[i] = Chap.Direction.values()[random.nextInt(4)];
+            engine.move(directions[i]);
+        }
+        while (engine.getHistory().size() > 1) {
+            assertTrue(engine.undo());
+        }
+        GameEngine played = new GameEngine(new Board(Persistency.level1));
+        played.move(Chap.Direction.RIGHT);
+        assertArrayEquals(played.getBoard().copyCells(), chap.getBoard().copyCells());
+        assertEquals(played.getChap().getX(), chap.getX());
+        assertEquals(played.getChap().getY(), chap.getY());
+        assertArrayEquals(played.getChap().getInventory(), chap.getInventory());
+        assertEquals(played.getChap().getPlayerTreasureCount(), chap.getPlayerTreasureCount());
+        assertSame(Chap.State.ONGOING, chap.getState());
+    }
+
+    @Test
+    public void testMoveHistoryCapacity() {
+        GameEngine engine = new GameEngine(chap.getBoard());
+        engine.setHistory(new MoveHistory(100));
+        for (int i = 0; i < 250; i++) {
+            engine.move(i % 2 == 0 ? Chap.Direction.UP : Chap.Direction.DOWN);
+        }
+        engine.move(Chap.Direction.RIGHT);
+        engine.move(Chap.Direction.RIGHT);
+        assertEquals(100, engine.getHistory().size());
+        assertTrue(engine.undo());
+        assertTrue(engine.undo());
+        assertEquals(7, chap.getX());
+        assertEquals(0, chap.getPlayerTreasureCount());
+        for (int i = 0; i < 98; i++) {
+            assertTrue(engine.undo());
+        }
+        assertFalse(engine.undo());
+        assertEquals(7, chap.getX());
+    }
 }
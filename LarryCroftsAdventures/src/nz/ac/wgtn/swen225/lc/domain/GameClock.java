@@ -0,0 +1,78 @@
+package nz.ac.wgtn.swen225.lc.domain;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A fixed timestep clock for the game simulation. Each call to
+ * {@link #advance()} reports how many whole ticks of {@link #TICK_NANOS} have
+ * passed on the time source since the last call, so the countdown, enemies and
+ * camera all move by the same amount per tick however often the caller polls.
+ * The time source is injectable, so tests and replays can run on a fake clock
+ * and go faster than real time.
+ */
+public class GameClock {
+    /**
+     * The number of simulation ticks in one second of game time.
+     */
+    public static final int TICKS_PER_SECOND = 100;
+    /**
+     * The length of one tick in nanoseconds.
+     */
+    public static final long TICK_NANOS = 1_000_000_000L / TICKS_PER_SECOND;
+    /**
+     * The most ticks reported by one call to {@link #advance()}. Anything beyond
+     * this is dropped, so a long stall such as a modal dialog does not make the
+     * game jump ahead.
+     */
+    public static final int MAX_TICKS_PER_ADVANCE = TICKS_PER_SECOND / 4;
+
+    private final LongSupplier timeSource;
+    private long last;
+
+    /**
+     * Create a new clock.
+     *
+     * @param timeSource supplies the current time in nanoseconds
+     */
+    public GameClock(LongSupplier timeSource) {
+        if (timeSource == null) {
+            throw new IllegalArgumentException();
+        }
+        this.timeSource = timeSource;
+        this.last = timeSource.getAsLong();
+    }
+
+    /**
+     * Create a clock that follows {@link System#nanoTime()}.
+     *
+     * @return the clock
+     */
+    public static GameClock system() {
+        return new GameClock(System::nanoTime);
+    }
+
+    /**
+     * Work out how many ticks are due since the last call. Any part of a tick left
+     * over is carried into the next call.
+     *
+     * @return the number of ticks to simulate
+     */
+    public int advance() {
+        long now = timeSource.getAsLong();
+        long due = (now - last) / TICK_NANOS;
+        if (due > MAX_TICKS_PER_ADVANCE) {
+            last = now;
+            return MAX_TICKS_PER_ADVANCE;
+        }
+        last += due * TICK_NANOS;
+        return (int) due;
+    }
+
+    /**
+     * Forget any time that has passed, so the next call to {@link #advance()}
+     * counts from now.
+     */
+    public void reset() {
+        last = timeSource.getAsLong();
+    }
+}
@@ -0,0 +1,299 @@
+package nz.ac.wgtn.swen225.lc.domain;
+
+import nz.ac.wgtn.swen225.lc.domain.tiles.Tile;
+import nz.ac.wgtn.swen225.lc.domain.tiles.TileKind;
+import nz.ac.wgtn.swen225.lc.persistency.AutoActor;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs a game on a board without any user interface. The engine applies moves,
+ * counts down the level timer and moves the enemies on fixed ticks of a
+ * {@link GameClock}, and reports what happened
+ * to a {@link Listener}. It touches no Swing or AWT classes, so tests, bots and
+ * replay tools can drive a game in a plain JVM.
+ */
+public class GameEngine {
+    private static final Listener NO_LISTENER = new Listener() {
+    };
+
+    private final Board board;
+    private final Chap chap;
+    private int timeLeft;
+    private long ticks;
+    private final Random random = new Random(0);
+    private Listener listener = NO_LISTENER;
+    private MoveHistory history;
+
+    /**
+     * Receives the results of a running game. Every method does nothing by
+     * default, so implementations only need to override what they use.
+     */
+    public interface Listener {
+        /**
+         * Called after every attempted move.
+         *
+         * @param direction the direction of the move
+         * @param result    the result of the move
+         * @param entered   the tile that was entered, or null if the move was blocked
+         */
+        default void moved(Chap.Direction direction, MoveResult result, Tile entered) {
+        }
+
+        /**
+         * Called when the level timer counts down.
+         *
+         * @param timeLeft the number of seconds left
+         */
+        default void timeChanged(int timeLeft) {
+        }
+
+        /**
+         * Called when the level is completed or the player runs out of time.
+         *
+         * @param state the new state of the player
+         */
+        default void stateChanged(Chap.State state) {
+        }
+    }
+
+    /**
+     * Create a new engine for a level file.
+     *
+     * @param file the level or saved game to play
+     */
+    public GameEngine(File file) {
+        this(new Board(file));
+    }
+
+    /**
+     * Create a new engine for a board.
+     *
+     * @param board the board to play on
+     */
+    public GameEngine(Board board) {
+        if (board == null) {
+            throw new IllegalArgumentException();
+        }
+        this.board = board;
+        this.chap = board.getChap();
+        this.timeLeft = board.getTime();
+    }
+
+    /**
+     * Attempt to move the player one square.
+     *
+     * @param direction the direction to move the player
+     * @return the result of the move
+     */
+    public MoveResult move(Chap.Direction direction) {
+        Chap.State before = chap.getState();
+        int x = chap.getX();
+        int y = chap.getY();
+        int treasureCount = chap.getPlayerTreasureCount();
+        MoveResult result = chap.tryMove(direction);
+        // blocked moves are kept too, as a step that changes nothing, so the history stays in step with a replay
+        if (history != null) {
+            history.push(x, y, treasureCount, before, replacedBy(x, y));
+        }
+        listener.moved(direction, result, result.moved() ? chap.getLastTile() : null);
+        if (chap.getState() != before) {
+            listener.stateChanged(chap.getState());
+        }
+        return result;
+    }
+
+    /**
+     * Find the kind of tile the last move reset to a free tile, if it did.
+     *
+     * @param x the x position before the move
+     * @param y the y position before the move
+     * @return the kind of tile, or null if no tile was reset
+     */
+    private TileKind replacedBy(int x, int y) {
+        if (chap.getX() == x && chap.getY() == y) {
+            return null;
+        }
+        TileKind entered = TileKind.of(chap.getLastTile());
+        return board.getKind(chap.getX(), chap.getY()) == entered ? null : entered;
+    }
+
+    /**
+     * Keep the inverse of every move from now on in a history, so that moves
+     * can be taken back with {@link #undo()}.
+     *
+     * @param history the history to add to, or null to stop keeping one
+     */
+    public void setHistory(MoveHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * Get the history of moves that can be taken back.
+     *
+     * @return the history, or null if none is being kept
+     */
+    public MoveHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Take back the newest move in the history, putting back the player, the
+     * tile the move replaced, the keys and the treasure count. Listeners are not
+     * told about moves that are taken back.
+     *
+     * @return false if there is no history or no move left to take back
+     */
+    public boolean undo() {
+        return history != null && history.undo(board);
+    }
+
+    /**
+     * Advance the game by one fixed tick of {@link GameClock#TICK_NANOS}. Every
+     * {@link GameClock#TICKS_PER_SECOND} ticks this runs {@link #tick()}.
+     *
+     * @return true if a second of game time passed on this tick
+     */
+    public boolean step() {
+        ticks++;
+        if (ticks % GameClock.TICKS_PER_SECOND == 0) {
+            tick();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Run every tick that the clock says is due.
+     *
+     * @param clock the simulation clock
+     * @return the number of ticks run
+     */
+    public int advance(GameClock clock) {
+        int due = clock.advance();
+        for (int i = 0; i < due; i++) {
+            step();
+        }
+        return due;
+    }
+
+    /**
+     * Advance the game by one second: count down the level timer and move the
+     * enemies. Does nothing unless the game is ongoing. When the timer reaches
+     * zero the player is marked as dead.
+     */
+    public void tick() {
+        if (chap.getState() != Chap.State.ONGOING) {
+            return;
+        }
+        if (timeLeft > 0) {
+            timeLeft--;
+            listener.timeChanged(timeLeft);
+        }
+        tickEnemies();
+        if (timeLeft == 0) {
+            chap.setState(Chap.State.DEAD);
+            listener.stateChanged(Chap.State.DEAD);
+        }
+    }
+
+    /**
+     * Give every enemy on the board the chance to move.
+     */
+    public void tickEnemies() {
+        List<AutoActor> actors = board.getAutoActors();
+        for (int i = 0; i < actors.size(); i++) {
+            actors.set(i, actors.get(i).move(board, random));
+        }
+    }
+
+    /**
+     * Set the listener that is told about the results of the game.
+     *
+     * @param listener the listener, or null to stop listening
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener == null ? NO_LISTENER : listener;
+    }
+
+    /**
+     * Add a listener that is told about the results of the game as well as any
+     * listeners already set.
+     *
+     * @param added the listener to add
+     */
+    public void addListener(Listener added) {
+        Listener existing = listener;
+        if (existing == NO_LISTENER) {
+            setListener(added);
+            return;
+        }
+        listener = new Listener() {
+            @Override
+            public void moved(Chap.Direction direction, MoveResult result, Tile entered) {
+                existing.moved(direction, result, entered);
+                added.moved(direction, result, entered);
+            }
+
+            @Override
+            public void timeChanged(int timeLeft) {
+                existing.timeChanged(timeLeft);
+                added.timeChanged(timeLeft);
+            }
+
+            @Override
+            public void stateChanged(Chap.State state) {
+                existing.stateChanged(state);
+                added.stateChanged(state);
+            }
+        };
+    }
+
+    /**
+     * Check whether the game has finished, either by completing the level or by
+     * running out of time.
+     *
+     * @return true if the game is over
+     */
+    public boolean isOver() {
+        return chap.getState() == Chap.State.COMPLETED || chap.getState() == Chap.State.DEAD;
+    }
+
+    /**
+     * Get the number of ticks run so far.
+     *
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Get the number of seconds left on the level timer.
+     *
+     * @return the time left
+     */
+    public int getTimeLeft() {
+        return timeLeft;
+    }
+
+    /**
+     * Get the board being played.
+     *
+     * @return the board
+     */
+    public Board getBoard() {
+        return board;
+    }
+
+    /**
+     * Get the player.
+     *
+     * @return the player
+     */
+    public Chap getChap() {
+        return chap;
+    }
+}
@@ -0,0 +1,137 @@
+package nz.ac.wgtn.swen225.lc.domain;
+
+import nz.ac.wgtn.swen225.lc.domain.items.Item;
+import nz.ac.wgtn.swen225.lc.domain.items.Key;
+
+import java.util.Arrays;
+
+/**
+ * Represents the player's inventory as a count of keys per colour, so checking
+ * for and using a key takes constant time.
+ */
+public class Inventory {
+    /**
+     * The number of rows in the grid view of the inventory.
+     */
+    public static final int ROWS = 2;
+    /**
+     * The number of columns in the grid view of the inventory.
+     */
+    public static final int COLUMNS = 4;
+    /**
+     * The maximum number of items the inventory can hold.
+     */
+    public static final int CAPACITY = ROWS * COLUMNS;
+
+    private static final Key.Colour[] COLOURS = Key.Colour.values();
+
+    private final int[] keys = new int[COLOURS.length];
+    private int size;
+    private Item[][] view;
+
+    /**
+     * Add a key to the inventory.
+     *
+     * @param colour the colour of the key
+     * @return true if successful, false if the inventory is full
+     */
+    public boolean addKey(Key.Colour colour) {
+        if (size == CAPACITY) {
+            return false;
+        }
+        keys[colour.ordinal()]++;
+        size++;
+        view = null;
+        return true;
+    }
+
+    /**
+     * Remove one key of the given colour.
+     *
+     * @param colour the colour of the key
+     * @return true if successful, false if there is no key of that colour
+     */
+    public boolean useKey(Key.Colour colour) {
+        if (keys[colour.ordinal()] == 0) {
+            return false;
+        }
+        keys[colour.ordinal()]--;
+        size--;
+        view = null;
+        return true;
+    }
+
+    /**
+     * Check whether the inventory holds a key of the given colour.
+     *
+     * @param colour the colour of the key
+     * @return true if there is at least one key of that colour
+     */
+    public boolean hasKey(Key.Colour colour) {
+        return keys[colour.ordinal()] > 0;
+    }
+
+    /**
+     * Get the number of keys of the given colour.
+     *
+     * @param colour the colour of the key
+     * @return the number of keys
+     */
+    public int getKeyCount(Key.Colour colour) {
+        return keys[colour.ordinal()];
+    }
+
+    /**
+     * Get the number of items in the inventory.
+     *
+     * @return the number of items
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove every item from the inventory.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+        view = null;
+    }
+
+    /**
+     * Replace the contents of the inventory with the items in a grid. Any item
+     * beyond the capacity of the inventory is dropped.
+     *
+     * @param grid the items, where empty slots are null
+     */
+    public void setItems(Item[][] grid) {
+        clear();
+        for (Item[] row : grid) {
+            for (Item item : row) {
+                if (item instanceof Key key) {
+                    addKey(key.colour());
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the inventory as a grid of slots, filled in colour order. The grid is
+     * cached until the inventory changes, so it must not be modified.
+     *
+     * @return the items, where empty slots are null
+     */
+    public Item[][] getItems() {
+        if (view == null) {
+            view = new Item[ROWS][COLUMNS];
+            int slot = 0;
+            for (Key.Colour colour : COLOURS) {
+                for (int i = 0; i < keys[colour.ordinal()]; i++, slot++) {
+                    view[slot / COLUMNS][slot % COLUMNS] = Key.of(colour);
+                }
+            }
+        }
+        return view;
+    }
+}
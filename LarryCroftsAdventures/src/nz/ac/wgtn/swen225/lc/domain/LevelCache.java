@@ -0,0 +1,112 @@
+package nz.ac.wgtn.swen225.lc.domain;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import nz.ac.wgtn.swen225.lc.persistency.SaveJournal;
+
+/**
+ * Keeps the parsed {@link LevelTemplate templates} of level and save files, so
+ * that restarting a level or moving to the next one copies an existing layout
+ * instead of parsing the file again. Entries are keyed by file and
+ * modification time, along with that of the file's save journal log if it has
+ * one, so a file that changes on disk is parsed again on its next use. Levels
+ * can be prefetched on a background thread before they are needed.
+ */
+public final class LevelCache {
+	private static final LevelCache SHARED = new LevelCache();
+
+	private final Map<File, Entry> entries = new ConcurrentHashMap<>();
+	private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "level-prefetch");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private record Entry(long lastModified, long logModified, CompletableFuture<LevelTemplate> template) {
+	}
+
+	/**
+	 * Get the cache shared by every board in the game.
+	 *
+	 * @return the shared cache
+	 */
+	public static LevelCache getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Get the template of a file, parsing it on this thread if it is not cached
+	 * or has changed. If the file is being prefetched, this waits for the
+	 * prefetch instead of parsing it twice.
+	 *
+	 * @param file the level or save file
+	 * @return the template
+	 * @throws UncheckedIOException if the file is missing or cannot be parsed
+	 */
+	public LevelTemplate get(File file) {
+		try {
+			return entry(file, Runnable::run).template().join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Start parsing a file on a background thread, if it exists and is not
+	 * already cached.
+	 *
+	 * @param file the level or save file
+	 */
+	public void prefetch(File file) {
+		if (file.isFile()) {
+			entry(file, prefetcher);
+		}
+	}
+
+	/**
+	 * Remove every cached template.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Find the current entry for a file, or make a new one and start loading it
+	 * on the given executor. Failed loads are not kept, so they are tried again.
+	 */
+	private Entry entry(File file, Executor executor) {
+		File key = file.getAbsoluteFile();
+		long lastModified = key.lastModified();
+		long logModified = SaveJournal.logFor(key).lastModified();
+		Entry[] created = new Entry[1];
+		Entry entry = entries.compute(key, (k, cached) -> {
+			if (cached != null && cached.lastModified() == lastModified && cached.logModified() == logModified
+					&& !cached.template().isCompletedExceptionally()) {
+				return cached;
+			}
+			created[0] = new Entry(lastModified, logModified, new CompletableFuture<>());
+			return created[0];
+		});
+		if (entry == created[0]) {
+			executor.execute(() -> {
+				try {
+					entry.template().complete(LevelTemplate.load(key));
+				} catch (RuntimeException e) {
+					entry.template().completeExceptionally(e);
+				}
+			});
+		}
+		return entry;
+	}
+}
@@ -0,0 +1,156 @@
+package nz.ac.wgtn.swen225.lc.domain;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import nz.ac.wgtn.swen225.lc.domain.items.Item;
+import nz.ac.wgtn.swen225.lc.domain.tiles.TileKind;
+import nz.ac.wgtn.swen225.lc.persistency.AutoActor;
+import nz.ac.wgtn.swen225.lc.persistency.Persistency;
+
+/**
+ * The parsed starting layout of a level or save. A template is never changed
+ * after it is loaded, so one template can be shared between threads and used
+ * to build any number of {@link Board boards}, each of which gets its own copy
+ * of the mutable state.
+ */
+public final class LevelTemplate {
+	private final byte[] cells;
+	private final int width;
+	private final int height;
+	private final Map<Integer, String> messages;
+	private final List<AutoActor> actors;
+	private final Item[][] inventory;
+	private final int playerX;
+	private final int playerY;
+	private final int playerTreasureCount;
+	private final int boardTreasureCount;
+	private final int time;
+	private final int level;
+
+	private LevelTemplate(Persistency persistency, byte[] cells) {
+		this.cells = cells;
+		this.width = persistency.width;
+		this.height = persistency.height;
+		this.messages = Map.copyOf(persistency.messages);
+		this.actors = new ArrayList<>();
+		for (AutoActor actor : persistency.getActors()) {
+			actors.add(actor.copy());
+		}
+		this.inventory = copy(persistency.invent);
+		this.playerX = persistency.playerX;
+		this.playerY = persistency.playerY;
+		this.playerTreasureCount = persistency.playerTreasureCount;
+		this.boardTreasureCount = persistency.boardTreasureCount;
+		this.time = persistency.timeLeft;
+		this.level = persistency.level;
+		cells[playerY * width + playerX] = TileKind.FREE.code();
+	}
+
+	/**
+	 * Parse a level or save file into a template.
+	 *
+	 * @param file the file to load
+	 * @return the template
+	 * @throws UncheckedIOException if the file is missing or cannot be parsed
+	 */
+	public static LevelTemplate load(File file) {
+		Persistency persistency = new Persistency();
+		try {
+			byte[] cells = persistency.loadBoard(file);
+			if (cells == null) {
+				throw new IOException("Could not parse " + file);
+			}
+			return new LevelTemplate(persistency, cells);
+		} catch (FileNotFoundException e) {
+			throw new UncheckedIOException("File not found: " + e.getMessage(), e);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static Item[][] copy(Item[][] items) {
+		Item[][] copy = new Item[items.length][];
+		for (int i = 0; i < items.length; i++) {
+			copy[i] = items[i].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * Get a new copy of the cells, for a board to change.
+	 *
+	 * @return the cell codes in row-major order
+	 */
+	byte[] copyCells() {
+		return cells.clone();
+	}
+
+	/**
+	 * Get new copies of the enemies, for a board to move.
+	 *
+	 * @return the enemies
+	 */
+	List<AutoActor> copyActors() {
+		List<AutoActor> copy = new ArrayList<>(actors.size());
+		for (AutoActor actor : actors) {
+			copy.add(actor.copy());
+		}
+		return copy;
+	}
+
+	/**
+	 * Get a new copy of the starting inventory.
+	 *
+	 * @return the inventory grid
+	 */
+	Item[][] copyInventory() {
+		return copy(inventory);
+	}
+
+	/**
+	 * Get the messages of the information fields, keyed by cell index.
+	 *
+	 * @return an unmodifiable map of the messages
+	 */
+	Map<Integer, String> getMessages() {
+		return messages;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getPlayerX() {
+		return playerX;
+	}
+
+	public int getPlayerY() {
+		return playerY;
+	}
+
+	public int getPlayerTreasureCount() {
+		return playerTreasureCount;
+	}
+
+	public int getBoardTreasureCount() {
+		return boardTreasureCount;
+	}
+
+	public int getTime() {
+		return time;
+	}
+
+	public int getLevel() {
+		return level;
+	}
+}
@@ -0,0 +1,121 @@
+package nz.ac.wgtn.swen225.lc.domain;
+
+import nz.ac.wgtn.swen225.lc.domain.items.Key;
+import nz.ac.wgtn.swen225.lc.domain.tiles.TileKind;
+
+/**
+ * The inverse of every move a {@link GameEngine} has made, so the moves can be
+ * taken back one at a time with {@link GameEngine#undo()}. Each move is kept
+ * as a single long holding the position and treasure count before the move,
+ * the state of the player and the kind of tile the move replaced with a free
+ * tile, if any. The key picked up or used follows from the replaced tile, so
+ * taking a move back costs the same however long the game has run. A move
+ * that was blocked is kept as well, and taking it back changes nothing.
+ * <p>
+ * A history can be given a capacity, past which the oldest moves are
+ * forgotten, so a long replay does not grow it without bound.
+ */
+public class MoveHistory {
+    private static final Chap.State[] STATES = Chap.State.values();
+
+    private final int capacity;
+    private long[] deltas;
+    private int start; // the index of the oldest move, as the moves wrap around the array
+    private int size;
+
+    /**
+     * Make a history that keeps every move.
+     */
+    public MoveHistory() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Make a history that keeps only the newest moves.
+     *
+     * @param capacity the most moves to keep
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public MoveHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        this.capacity = capacity;
+        deltas = new long[Math.min(64, capacity)];
+    }
+
+    /**
+     * Get the number of moves that can be taken back.
+     *
+     * @return the number of moves
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Forget every move, such as after the board has been put into another
+     * state by other means.
+     */
+    public void clear() {
+        start = 0;
+        size = 0;
+    }
+
+    /**
+     * Remember the inverse of a move.
+     *
+     * @param x             the x position before the move
+     * @param y             the y position before the move
+     * @param treasureCount the treasure count before the move
+     * @param state         the state of the player before the move
+     * @param replaced      the kind of tile the move reset to free, or null
+     */
+    void push(int x, int y, int treasureCount, Chap.State state, TileKind replaced) {
+        if (size == capacity) {
+            // forget the oldest move, whose slot the new move takes
+            start = (start + 1) % deltas.length;
+            size--;
+        } else if (size == deltas.length) {
+            long[] grown = new long[(int) Math.min(size * 2L, capacity)];
+            for (int i = 0; i < size; i++) {
+                grown[i] = deltas[(start + i) % deltas.length];
+            }
+            deltas = grown;
+            start = 0;
+        }
+        deltas[(start + size++) % deltas.length] = (x & 0xFFFFL)
+                | (y & 0xFFFFL) << 16
+                | (treasureCount & 0xFFFFL) << 32
+                | (long) (replaced == null ? 0 : replaced.ordinal() + 1) << 48
+                | (long) state.ordinal() << 56;
+    }
+
+    /**
+     * Take back the newest move.
+     *
+     * @param board the board the move was made on
+     * @return false if there is no move to take back
+     */
+    boolean undo(Board board) {
+        if (size == 0) {
+            return false;
+        }
+        long delta = deltas[(start + --size) % deltas.length];
+        Chap chap = board.getChap();
+        int replaced = (int) (delta >>> 48 & 0xFF);
+        if (replaced != 0) {
+            TileKind kind = TileKind.fromCode(replaced - 1);
+            board.setKind(chap.getX(), chap.getY(), kind);
+            Key.Colour colour = kind.getColour();
+            if (colour != null && kind == TileKind.key(colour)) {
+                chap.useKey(colour);
+            } else if (colour != null) {
+                chap.addKey(colour);
+            }
+        }
+        chap.restore((int) (delta & 0xFFFF), (int) (delta >>> 16 & 0xFFFF), (int) (delta >>> 32 & 0xFFFF),
+                STATES[(int) (delta >>> 56)]);
+        return true;
+    }
+}
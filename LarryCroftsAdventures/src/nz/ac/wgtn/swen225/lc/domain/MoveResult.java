@@ -0,0 +1,45 @@
+package nz.ac.wgtn.swen225.lc.domain;
+
+/**
+ * The outcome of an attempt to move the player, as returned by
+ * {@link Chap#tryMove(Chap.Direction)}.
+ */
+public enum MoveResult {
+    /**
+     * The player moved onto the next tile.
+     */
+    MOVED,
+    /**
+     * The next tile is a wall.
+     */
+    WALL,
+    /**
+     * The next position is outside the board.
+     */
+    EDGE,
+    /**
+     * The next tile is a door that the player has no key for.
+     */
+    LOCKED_DOOR,
+    /**
+     * The next tile is the exit lock and treasures are still left to collect.
+     */
+    EXIT_LOCKED,
+    /**
+     * The next tile is a key and the inventory has no room for it.
+     */
+    INVENTORY_FULL,
+    /**
+     * The game is paused, completed or over.
+     */
+    NOT_ONGOING;
+
+    /**
+     * Check whether the move went ahead.
+     *
+     * @return true if the player moved, false if the move was blocked
+     */
+    public boolean moved() {
+        return this == MOVED;
+    }
+}
@@ -8,6 +8,10 @@ import nz.ac.wgtn.swen225.lc.domain.tiles.Door;
  * @author Anthony Kendrew (300607402)
  */
 public record Key(Key.Colour colour) implements Item {
+    private static final Key[] KEYS = {
+            new Key(Colour.BLUE), new Key(Colour.GREEN), new Key(Colour.YELLOW), new Key(Colour.RED)
+    };
+
     /**
      * Create a new key.
      *
@@ -19,6 +23,17 @@ public record Key(Key.Colour colour) implements Item {
         }
     }
 
+    /**
+     * Get the shared key of the given colour. Keys are immutable, so there is no
+     * need to create a new one for each check.
+     *
+     * @param colour the colour of the key
+     * @return the key
+     */
+    public static Key of(Colour colour) {
+        return KEYS[colour.ordinal()];
+    }
+
     /**
      * Deep clone a key.
      *
@@ -25,15 +25,13 @@ public class Door extends Wall {
     }
 
     /**
-     * Attempt to open this door.
+     * Attempt to open this door, which uses up one of the player's keys of its
+     * colour. The key was always meant to be spent, but was only removed
+     * inside an assert, so it was kept when assertions were off.
      */
     @Override
     public boolean performTileAction(Chap chap) {
-        if (canOpen(chap)) {
-            assert chap.removeItem(new Key(colour));
-            return true;
-        }
-        return false;
+        return chap.useKey(colour);
     }
 
     /**
@@ -51,7 +49,7 @@ public class Door extends Wall {
      * @return true if the key is the same colour as this door, false otherwise
      */
     public boolean canOpen(Chap chap) {
-        return chap.hasItem(new Key(colour));
+        return chap.hasKey(colour);
     }
 
     /**
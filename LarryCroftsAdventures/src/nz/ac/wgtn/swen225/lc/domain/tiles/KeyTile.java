@@ -29,7 +29,7 @@ public class KeyTile extends Free {
      */
     @Override
     public boolean performTileAction(Chap chap) {
-        return chap.addItem(new Key(colour));
+        return chap.addKey(colour);
     }
 
     /**
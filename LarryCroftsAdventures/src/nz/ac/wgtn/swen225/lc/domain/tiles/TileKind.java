@@ -0,0 +1,139 @@
+package nz.ac.wgtn.swen225.lc.domain.tiles;
+
+import nz.ac.wgtn.swen225.lc.domain.items.Key;
+
+/**
+ * Enumerates every kind of tile that can appear on a board. The ordinal of each
+ * kind is used as its one byte cell code in the compact board representation.
+ */
+public enum TileKind {
+    FREE, WALL,
+    DOOR_BLUE, DOOR_GREEN, DOOR_YELLOW, DOOR_RED,
+    KEY_BLUE, KEY_GREEN, KEY_YELLOW, KEY_RED,
+    INFO_FIELD, EXIT_LOCK, EXIT, TREASURE;
+
+    private static final TileKind[] KINDS = values();
+    private static final Tile[] FLYWEIGHTS = new Tile[KINDS.length];
+
+    static {
+        for (TileKind kind : KINDS) {
+            FLYWEIGHTS[kind.ordinal()] = kind.create(-1, -1);
+        }
+    }
+
+    /**
+     * Create a new tile of this kind at the given position.
+     *
+     * @param x the x position of the tile
+     * @param y the y position of the tile
+     * @return the new tile
+     */
+    public Tile create(int x, int y) {
+        return switch (this) {
+            case FREE -> new Free(x, y);
+            case WALL -> new Wall(x, y);
+            case DOOR_BLUE, DOOR_GREEN, DOOR_YELLOW, DOOR_RED -> new Door(getColour(), x, y);
+            case KEY_BLUE, KEY_GREEN, KEY_YELLOW, KEY_RED -> new KeyTile(getColour(), x, y);
+            case INFO_FIELD -> new InfoField(x, y);
+            case EXIT_LOCK -> new ExitLock(x, y);
+            case EXIT -> new Exit(x, y);
+            case TREASURE -> new Treasure(x, y);
+        };
+    }
+
+    /**
+     * Get the shared instance of this kind of tile. Tiles hold no mutable state,
+     * so one instance can stand in for every cell of this kind. The position of a
+     * shared instance is not meaningful.
+     *
+     * @return the shared tile
+     */
+    public Tile flyweight() {
+        return FLYWEIGHTS[ordinal()];
+    }
+
+    /**
+     * Get the byte code that this kind is stored as in a compact board.
+     *
+     * @return the cell code
+     */
+    public byte code() {
+        return (byte) ordinal();
+    }
+
+    /**
+     * Get the colour of a door or key kind.
+     *
+     * @return the colour, or null if this kind has no colour
+     */
+    public Key.Colour getColour() {
+        return switch (this) {
+            case DOOR_BLUE, KEY_BLUE -> Key.Colour.BLUE;
+            case DOOR_GREEN, KEY_GREEN -> Key.Colour.GREEN;
+            case DOOR_YELLOW, KEY_YELLOW -> Key.Colour.YELLOW;
+            case DOOR_RED, KEY_RED -> Key.Colour.RED;
+            default -> null;
+        };
+    }
+
+    /**
+     * Get the kind for a cell code.
+     *
+     * @param code the cell code
+     * @return the kind of tile
+     */
+    public static TileKind fromCode(int code) {
+        return KINDS[code];
+    }
+
+    /**
+     * Get the door kind of the given colour.
+     *
+     * @param colour the colour of the door
+     * @return the kind of tile
+     */
+    public static TileKind door(Key.Colour colour) {
+        return KINDS[DOOR_BLUE.ordinal() + colour.ordinal()];
+    }
+
+    /**
+     * Get the key tile kind of the given colour.
+     *
+     * @param colour the colour of the key
+     * @return the kind of tile
+     */
+    public static TileKind key(Key.Colour colour) {
+        return KINDS[KEY_BLUE.ordinal() + colour.ordinal()];
+    }
+
+    /**
+     * Get the kind of the given tile.
+     *
+     * @param tile the tile
+     * @return the kind of tile
+     */
+    public static TileKind of(Tile tile) {
+        if (tile instanceof Door door) {
+            return door(door.getColour());
+        }
+        if (tile instanceof KeyTile keyTile) {
+            return key(keyTile.getColour());
+        }
+        if (tile instanceof ExitLock) {
+            return EXIT_LOCK;
+        }
+        if (tile instanceof Wall) {
+            return WALL;
+        }
+        if (tile instanceof InfoField) {
+            return INFO_FIELD;
+        }
+        if (tile instanceof Exit) {
+            return EXIT;
+        }
+        if (tile instanceof Treasure) {
+            return TREASURE;
+        }
+        return FREE;
+    }
+}
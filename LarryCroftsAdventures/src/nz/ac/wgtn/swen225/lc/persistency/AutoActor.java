@@ -1,12 +1,11 @@
 package nz.ac.wgtn.swen225.lc.persistency;
 
+import nz.ac.wgtn.swen225.lc.domain.Board;
 import nz.ac.wgtn.swen225.lc.domain.Chap;
 import nz.ac.wgtn.swen225.lc.domain.tiles.Free;
-import nz.ac.wgtn.swen225.lc.domain.tiles.Tile;
 
 import java.io.Serializable;
-import java.time.Duration;
-import java.time.Instant;
+import java.util.Random;
 
 /**
  * Represents an enemy in the game.
@@ -15,28 +14,39 @@ public class AutoActor implements Serializable {
     private int x;
     private int y;
     private Direction direction;
-    private Instant lastDirectionChange;
+    private int secondsSinceTurn;
     private Chap chap;
 
     public enum Direction {
         UP, DOWN, LEFT, RIGHT
     }
 
-    public AutoActor(int x, int y, Direction direction, Instant lastDirectionChange, Chap chap) {
+    public AutoActor(int x, int y, Direction direction, int secondsSinceTurn, Chap chap) {
         this.x = x;
         this.y = y;
         this.direction = direction;
-        this.lastDirectionChange = lastDirectionChange;
+        this.secondsSinceTurn = secondsSinceTurn;
         this.chap = chap;
     }
 
     public AutoActor() {
     }
 
-    public AutoActor move(Tile[][] grid) {
-        Instant now = Instant.now();
-        Duration duration = Duration.between(lastDirectionChange, now);
-        long secondsElapsed = duration.getSeconds();
+    /**
+     * Work out where this enemy will be after one more second of game time. Every
+     * three seconds it steps towards the player, or turns to a random direction
+     * if that step is blocked.
+     *
+     * @param board  the board the enemy is on
+     * @param random the source of random turns, so that games can be replayed
+     * @return the enemy after its turn
+     */
+    public AutoActor move(Board board, Random random) {
+        if (chap == null) {
+            chap = board.getChap();
+        }
+
+        int secondsElapsed = secondsSinceTurn + 1;
 
         if (secondsElapsed >= 3) {
             Direction newDirection = calculateDirectionTowardsChap();
@@ -59,13 +69,13 @@ public class AutoActor implements Serializable {
                     break;
             }
 
-            if (isValidMove(grid, newX, newY)) {
-                return new AutoActor(newX, newY, newDirection, Instant.now(), chap);
+            if (isValidMove(board, newX, newY)) {
+                return new AutoActor(newX, newY, newDirection, 0, chap);
             } else {
-                return new AutoActor(x, y, getRandomDirection(), Instant.now(), chap);
+                return new AutoActor(x, y, getRandomDirection(random), 0, chap);
             }
         } else {
-            return new AutoActor(x, y, direction, lastDirectionChange, chap);
+            return new AutoActor(x, y, direction, secondsElapsed, chap);
         }
     }
 
@@ -82,19 +92,29 @@ public class AutoActor implements Serializable {
         }
     }
 
-    private boolean isValidMove(Tile[][] grid, int x, int y) {
-        if (x >= 0 && x < grid.length && y >= 0 && y < grid[0].length) {
-            return grid[x][y] instanceof Free;
+    private boolean isValidMove(Board board, int x, int y) {
+        if (x >= 0 && x < board.getWidth() && y >= 0 && y < board.getHeight()) {
+            return board.getTile(x, y) instanceof Free;
         }
         return false;
     }
 
-    private Direction getRandomDirection() {
+    private Direction getRandomDirection(Random random) {
         Direction[] directions = Direction.values();
-        int randomIndex = (int) (Math.random() * directions.length);
+        int randomIndex = random.nextInt(directions.length);
         return directions[randomIndex];
     }
 
+    /**
+     * Make a copy of this enemy that is not yet tied to a player, so that it can
+     * be placed on a new board.
+     *
+     * @return the copy
+     */
+    public AutoActor copy() {
+        return new AutoActor(x, y, direction, secondsSinceTurn, null);
+    }
+
     public int getX() {
         return x;
     }
@@ -0,0 +1,165 @@
+package nz.ac.wgtn.swen225.lc.persistency;
+
+import nz.ac.wgtn.swen225.lc.domain.items.Item;
+import nz.ac.wgtn.swen225.lc.domain.items.Key;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads and writes the compact binary level format (".lcb"). A file holds a
+ * fixed header, one byte per cell and an interned table of info field messages:
+ * <pre>
+ * "LCB1"
+ * int width, height, playerX, playerY, playerTreasureCount, boardTreasureCount,
+ *     timeLeft, level
+ * byte[8] inventory (0 for an empty slot, otherwise 1 + key colour ordinal)
+ * int enemyCount, then enemyCount * (int x, int y)
+ * byte[width * height] cells (TileKind codes in row order)
+ * int messageCount, then messageCount * (short length, UTF-8 bytes)
+ * int messageCellCount, then messageCellCount * (int cell, short message)
+ * </pre>
+ * All numbers are big-endian. Files are read through a memory map, so loading
+ * is a single copy of the cells into the board.
+ */
+final class BinaryLevel {
+    /**
+     * The file extension of binary levels.
+     */
+    static final String EXTENSION = ".lcb";
+
+    private static final int MAGIC = 0x4C434231; // "LCB1"
+    private static final Key.Colour[] COLOURS = Key.Colour.values();
+
+    private BinaryLevel() {
+    }
+
+    /**
+     * Check whether a file is a binary level, going by its extension.
+     *
+     * @param file the file to check
+     * @return true if the file is a binary level
+     */
+    static boolean isBinary(File file) {
+        return file.getName().endsWith(EXTENSION);
+    }
+
+    /**
+     * Load a binary level into the game state fields of a {@link Persistency}.
+     *
+     * @param file        the file to read
+     * @param persistency receives the game state
+     * @return the cell codes in row order
+     * @throws IOException if the file cannot be read or is not a binary level
+     */
+    static byte[] read(File file, Persistency persistency) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < Integer.BYTES || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a binary level: " + file);
+            }
+            persistency.width = buffer.getInt();
+            persistency.height = buffer.getInt();
+            persistency.playerX = buffer.getInt();
+            persistency.playerY = buffer.getInt();
+            persistency.playerTreasureCount = buffer.getInt();
+            persistency.boardTreasureCount = buffer.getInt();
+            persistency.originalBoardTreasureCount = persistency.boardTreasureCount;
+            persistency.timeLeft = buffer.getInt();
+            persistency.level = buffer.getInt();
+
+            Item[][] invent = persistency.invent;
+            for (Item[] row : invent) {
+                for (int j = 0; j < row.length; j++) {
+                    int code = buffer.get();
+                    row[j] = code == 0 ? null : Key.of(COLOURS[code - 1]);
+                }
+            }
+
+            int enemies = buffer.getInt();
+            for (int i = 0; i < enemies; i++) {
+                persistency.actors.add(new AutoActor(buffer.getInt(), buffer.getInt(), AutoActor.Direction.UP, 0, null));
+            }
+
+            byte[] cells = new byte[persistency.width * persistency.height];
+            buffer.get(cells);
+
+            String[] table = new String[buffer.getInt()];
+            for (int i = 0; i < table.length; i++) {
+                byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(bytes);
+                table[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            int messageCells = buffer.getInt();
+            for (int i = 0; i < messageCells; i++) {
+                int cell = buffer.getInt();
+                persistency.message = table[buffer.getShort() & 0xFFFF];
+                persistency.messages.put(cell, persistency.message);
+            }
+            return cells;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt binary level: " + file, e);
+        }
+    }
+
+    /**
+     * Write the game state fields of a {@link Persistency} as a binary level.
+     *
+     * @param file        the file to write
+     * @param persistency holds the game state
+     * @param cells       the cell codes in row order
+     * @throws IOException if the file cannot be written
+     */
+    static void write(File file, Persistency persistency, byte[] cells) throws IOException {
+        Map<String, Integer> table = new LinkedHashMap<>();
+        for (String message : persistency.messages.values()) {
+            table.putIfAbsent(message, table.size());
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(persistency.width);
+            out.writeInt(persistency.height);
+            out.writeInt(persistency.playerX);
+            out.writeInt(persistency.playerY);
+            out.writeInt(persistency.playerTreasureCount);
+            out.writeInt(persistency.boardTreasureCount);
+            out.writeInt(persistency.timeLeft);
+            out.writeInt(persistency.level);
+
+            for (Item[] row : persistency.invent) {
+                for (Item item : row) {
+                    out.writeByte(item instanceof Key key ? key.colour().ordinal() + 1 : 0);
+                }
+            }
+
+            out.writeInt(persistency.actors.size());
+            for (AutoActor actor : persistency.actors) {
+                out.writeInt(actor.getX());
+                out.writeInt(actor.getY());
+            }
+
+            out.write(cells);
+
+            out.writeInt(table.size());
+            for (String message : table.keySet()) {
+                byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > 0xFFFF) {
+                    throw new IOException("Message too long for a binary level: " + message.substring(0, 20));
+                }
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(persistency.messages.size());
+            for (Map.Entry<Integer, String> entry : persistency.messages.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeShort(table.get(entry.getValue()));
+            }
+        }
+    }
+}
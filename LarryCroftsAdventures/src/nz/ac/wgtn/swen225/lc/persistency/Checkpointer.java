@@ -0,0 +1,194 @@
+package nz.ac.wgtn.swen225.lc.persistency;
+
+import nz.ac.wgtn.swen225.lc.domain.Board;
+import nz.ac.wgtn.swen225.lc.domain.Chap;
+import nz.ac.wgtn.swen225.lc.domain.GameEngine;
+import nz.ac.wgtn.swen225.lc.domain.MoveResult;
+import nz.ac.wgtn.swen225.lc.domain.tiles.Tile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Takes autosave checkpoints of a running game every so many moves or seconds.
+ * The most recent checkpoints are kept in a fixed-size ring of compact
+ * {@link SaveSnapshot snapshots}, and the newest is written to disk by the
+ * {@link SaveQueue}, so a crash loses at most the play since the last one.
+ * When the game is kept in a {@link SaveJournal}, a checkpoint writes the
+ * journal's buffered changes instead of the whole board.
+ * Taking a checkpoint only copies the cells and a few counters on the game
+ * thread, and the time it takes is measured so that it can be reported.
+ */
+public class Checkpointer implements GameEngine.Listener {
+    /**
+     * The default number of checkpoints kept in memory.
+     */
+    public static final int CAPACITY = 8;
+    /**
+     * The default number of moves between checkpoints.
+     */
+    public static final int EVERY_MOVES = 20;
+    /**
+     * The default number of seconds of game time between checkpoints.
+     */
+    public static final int EVERY_SECONDS = 10;
+
+    private final GameEngine engine;
+    private final File target;
+    private final SaveJournal journal;
+    private final SaveSnapshot[] ring;
+    private final int everyMoves;
+    private final int everySeconds;
+    private int next;
+    private int size;
+    private int moves;
+    private int seconds;
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+    private CompletableFuture<File> lastWrite = CompletableFuture.completedFuture(null);
+
+    /**
+     * The cost of taking checkpoints on the game thread, not counting the
+     * write to disk.
+     *
+     * @param count        the number of checkpoints taken
+     * @param averageNanos the mean time to take one, in nanoseconds
+     * @param maxNanos     the longest time to take one, in nanoseconds
+     */
+    public record Stats(long count, long averageNanos, long maxNanos) {
+        @Override
+        public String toString() {
+            return String.format("%d checkpoints, %.1f us average, %.1f us max", count, averageNanos / 1000.0,
+                    maxNanos / 1000.0);
+        }
+    }
+
+    /**
+     * Create a checkpointer with the default ring size and intervals.
+     *
+     * @param engine the running game
+     * @param target the file that the newest checkpoint is written to
+     */
+    public Checkpointer(GameEngine engine, File target) {
+        this(engine, target, CAPACITY, EVERY_MOVES, EVERY_SECONDS);
+    }
+
+    /**
+     * Create a checkpointer. It starts taking checkpoints once it is added as
+     * a listener of the engine.
+     *
+     * @param engine       the running game
+     * @param target       the file that the newest checkpoint is written to, or
+     *                     null to keep checkpoints in memory only
+     * @param capacity     the number of checkpoints kept in memory
+     * @param everyMoves   the number of moves between checkpoints
+     * @param everySeconds the number of seconds of game time between checkpoints
+     */
+    public Checkpointer(GameEngine engine, File target, int capacity, int everyMoves, int everySeconds) {
+        this(engine, target, null, capacity, everyMoves, everySeconds);
+    }
+
+    /**
+     * Create a checkpointer with the default ring size and intervals that
+     * writes checkpoints through a journal. The journal should be added as a
+     * listener of the engine before the checkpointer, so it has the latest
+     * changes when a checkpoint is taken.
+     *
+     * @param engine  the running game
+     * @param journal the journal of the game, which is written at each checkpoint
+     */
+    public Checkpointer(GameEngine engine, SaveJournal journal) {
+        this(engine, null, journal, CAPACITY, EVERY_MOVES, EVERY_SECONDS);
+    }
+
+    private Checkpointer(GameEngine engine, File target, SaveJournal journal, int capacity, int everyMoves,
+                         int everySeconds) {
+        if (capacity < 1 || everyMoves < 1 || everySeconds < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.engine = engine;
+        this.target = target;
+        this.journal = journal;
+        this.ring = new SaveSnapshot[capacity];
+        this.everyMoves = everyMoves;
+        this.everySeconds = everySeconds;
+    }
+
+    @Override
+    public void moved(Chap.Direction direction, MoveResult result, Tile entered) {
+        if (result.moved() && ++moves >= everyMoves) {
+            checkpoint();
+        }
+    }
+
+    @Override
+    public void timeChanged(int timeLeft) {
+        if (++seconds >= everySeconds) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Take a checkpoint now, keep it in the ring and queue it to be written.
+     *
+     * @return the checkpoint
+     */
+    public SaveSnapshot checkpoint() {
+        long start = System.nanoTime();
+        Board board = engine.getBoard();
+        Chap chap = board.getChap();
+        SaveSnapshot snapshot = SaveSnapshot.ofCells(List.of(), chap.getX(), chap.getY(),
+                chap.getPlayerTreasureCount(), board.getBoardTreasureCount(), board.getLevel(), engine.getTimeLeft(),
+                board.copyCells(), board.getWidth(), board.getHeight(), chap.getInventory())
+                .withCompactBoard(true);
+        ring[next] = snapshot;
+        next = (next + 1) % ring.length;
+        size = Math.min(size + 1, ring.length);
+        moves = 0;
+        seconds = 0;
+        if (journal != null) {
+            lastWrite = journal.write();
+        } else if (target != null) {
+            lastWrite = SaveQueue.getShared().submit(target, snapshot);
+        }
+        long elapsed = System.nanoTime() - start;
+        count++;
+        totalNanos += elapsed;
+        maxNanos = Math.max(maxNanos, elapsed);
+        return snapshot;
+    }
+
+    /**
+     * Get the checkpoints held in memory.
+     *
+     * @return the checkpoints, newest first
+     */
+    public List<SaveSnapshot> getCheckpoints() {
+        List<SaveSnapshot> checkpoints = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            checkpoints.add(ring[(next - i + ring.length) % ring.length]);
+        }
+        return checkpoints;
+    }
+
+    /**
+     * Get the write of the newest checkpoint to disk.
+     *
+     * @return a future that completes when the newest checkpoint is on disk
+     */
+    public CompletableFuture<File> getLastWrite() {
+        return lastWrite;
+    }
+
+    /**
+     * Get the cost of the checkpoints taken so far.
+     *
+     * @return the statistics
+     */
+    public Stats getStats() {
+        return new Stats(count, count == 0 ? 0 : totalNanos / count, maxNanos);
+    }
+}
@@ -0,0 +1,138 @@
+package nz.ac.wgtn.swen225.lc.persistency;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Opens save and recording files through gzip or deflate compression when
+ * they use it. Files are written compressed when their name ends in
+ * {@link #GZIP_EXTENSION} or {@link #DEFLATE_EXTENSION}, and are recognised by
+ * their first bytes when read, so a compressed file loads whatever it is
+ * called.
+ */
+public final class Compression {
+    /**
+     * Added to a file name to write it with gzip.
+     */
+    public static final String GZIP_EXTENSION = ".gz";
+    /**
+     * Added to a file name to write it as a zlib deflate stream.
+     */
+    public static final String DEFLATE_EXTENSION = ".deflate";
+
+    private static volatile int level = Deflater.DEFAULT_COMPRESSION;
+
+    private Compression() {
+    }
+
+    /**
+     * Set the compression level used for every compressed file written from
+     * now on.
+     *
+     * @param level from 0 for no compression to 9 for the smallest files, or -1
+     *              for the default
+     */
+    public static void setLevel(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level " + level);
+        }
+        Compression.level = level;
+    }
+
+    /**
+     * Get the compression level used for compressed files.
+     *
+     * @return the level
+     */
+    public static int getLevel() {
+        return level;
+    }
+
+    /**
+     * Open a file for reading, decompressing it if it starts with a gzip or
+     * zlib header.
+     *
+     * @param file the file to read
+     * @return a buffered stream of the uncompressed contents
+     * @throws IOException if the file cannot be opened
+     */
+    public static InputStream open(File file) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            in.mark(2);
+            int first = in.read();
+            int second = in.read();
+            in.reset();
+            if (first == 0x1F && second == 0x8B) {
+                return new BufferedInputStream(new GZIPInputStream(in));
+            }
+            if (first == 0x78 && second >= 0 && ((first << 8) | second) % 31 == 0) {
+                return new BufferedInputStream(new InflaterInputStream(in));
+            }
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Wrap a stream that writes a file so that it compresses, if the name of
+     * the file asks for it. Closing the returned stream finishes the
+     * compression and closes the given stream.
+     *
+     * @param out  the stream that writes the file
+     * @param file the file, whose name picks the compression
+     * @return the stream to write the uncompressed contents to
+     * @throws IOException if the compression header cannot be written
+     */
+    public static OutputStream wrap(OutputStream out, File file) throws IOException {
+        int current = level;
+        if (file.getName().endsWith(GZIP_EXTENSION)) {
+            return new GZIPOutputStream(out, 8192) {
+                {
+                    def.setLevel(current);
+                }
+            };
+        }
+        if (file.getName().endsWith(DEFLATE_EXTENSION)) {
+            return new DeflaterOutputStream(out, new Deflater(current), 8192) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        def.end();
+                    }
+                }
+            };
+        }
+        return out;
+    }
+
+    /**
+     * Get a file name without any compression extension, such as
+     * "save.json" for "save.json.gz".
+     *
+     * @param name the file name
+     * @return the name of the uncompressed contents
+     */
+    public static String stripExtension(String name) {
+        if (name.endsWith(GZIP_EXTENSION)) {
+            return name.substring(0, name.length() - GZIP_EXTENSION.length());
+        }
+        if (name.endsWith(DEFLATE_EXTENSION)) {
+            return name.substring(0, name.length() - DEFLATE_EXTENSION.length());
+        }
+        return name;
+    }
+}
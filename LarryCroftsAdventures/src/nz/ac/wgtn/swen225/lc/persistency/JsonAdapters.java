@@ -0,0 +1,261 @@
+package nz.ac.wgtn.swen225.lc.persistency;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import nz.ac.wgtn.swen225.lc.app.Move;
+import nz.ac.wgtn.swen225.lc.domain.items.Item;
+import nz.ac.wgtn.swen225.lc.domain.items.Key;
+import nz.ac.wgtn.swen225.lc.domain.tiles.Tile;
+import nz.ac.wgtn.swen225.lc.domain.tiles.TileKind;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Gson type adapters for everything stored in a level or save file:
+ * tiles, inventory items, enemies and recorded moves. They stream straight to
+ * and from {@link JsonWriter} and {@link JsonReader}, and they all name tiles
+ * and items through one lookup table, so a key is called "Key_Red" whether it
+ * is lying on the board or sitting in the inventory.
+ */
+public final class JsonAdapters {
+    private static final String[] NAMES = new String[TileKind.values().length];
+    private static final Map<String, TileKind> KINDS = new HashMap<>();
+
+    static {
+        name(TileKind.FREE, "Free");
+        name(TileKind.WALL, "Wall");
+        name(TileKind.DOOR_BLUE, "Door_Blue");
+        name(TileKind.DOOR_GREEN, "Door_Green");
+        name(TileKind.DOOR_YELLOW, "Door_Yellow");
+        name(TileKind.DOOR_RED, "Door_Red");
+        name(TileKind.KEY_BLUE, "Key_Blue");
+        name(TileKind.KEY_GREEN, "Key_Green");
+        name(TileKind.KEY_YELLOW, "Key_Yellow");
+        name(TileKind.KEY_RED, "Key_Red");
+        name(TileKind.INFO_FIELD, "InfoBox");
+        name(TileKind.EXIT_LOCK, "ExitLock");
+        name(TileKind.EXIT, "Exit");
+        name(TileKind.TREASURE, "Treasure");
+    }
+
+    /**
+     * Reads and writes a tile as a cell object such as
+     * {@code {"x": 3, "y": 4, "tile": "Free", "item": "Treasure"}}.
+     */
+    public static final TypeAdapter<Tile> TILES = new TypeAdapter<>() {
+        @Override
+        public void write(JsonWriter out, Tile tile) throws IOException {
+            if (tile == null) {
+                out.nullValue();
+                return;
+            }
+            writeCell(out, tile.getX(), tile.getY(), TileKind.of(tile), null);
+        }
+
+        @Override
+        public Tile read(JsonReader in) throws IOException {
+            Cell cell = readCell(in);
+            return cell.kind().create(cell.x(), cell.y());
+        }
+    };
+
+    /**
+     * Reads and writes an inventory item by name, with "none" for an empty slot.
+     */
+    public static final TypeAdapter<Item> ITEMS = new TypeAdapter<>() {
+        @Override
+        public void write(JsonWriter out, Item item) throws IOException {
+            out.value(item instanceof Key key ? nameOf(TileKind.key(key.colour())) : "none");
+        }
+
+        @Override
+        public Item read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return itemOf(in.nextString());
+        }
+    };
+
+    /**
+     * Reads and writes an enemy by its position. Enemies always start facing up.
+     */
+    public static final TypeAdapter<AutoActor> ACTORS = new TypeAdapter<>() {
+        @Override
+        public void write(JsonWriter out, AutoActor actor) throws IOException {
+            out.beginObject().name("x").value(actor.getX()).name("y").value(actor.getY()).endObject();
+        }
+
+        @Override
+        public AutoActor read(JsonReader in) throws IOException {
+            int x = 0;
+            int y = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "x" -> x = in.nextInt();
+                    case "y" -> y = in.nextInt();
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new AutoActor(x, y, AutoActor.Direction.UP, 0, null);
+        }
+    };
+
+    /**
+     * Reads and writes a recorded move as {@code {"move": "UP", "time": 1.5}}.
+     * Older files hold only the direction as a string. Those moves have no
+     * recorded time, which is read as NaN and written back as the string.
+     */
+    public static final TypeAdapter<Move> MOVES = new TypeAdapter<>() {
+        @Override
+        public void write(JsonWriter out, Move move) throws IOException {
+            if (Double.isNaN(move.time())) {
+                out.value(move.move());
+            } else {
+                out.beginObject().name("move").value(move.move()).name("time").value(move.time()).endObject();
+            }
+        }
+
+        @Override
+        public Move read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.STRING) {
+                return new Move(in.nextString(), Double.NaN);
+            }
+            String direction = null;
+            double time = Double.NaN;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "move" -> direction = in.nextString();
+                    case "time" -> time = in.nextDouble();
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Move(direction, time);
+        }
+    };
+
+    /**
+     * A Gson with every adapter registered.
+     */
+    public static final Gson GSON = new GsonBuilder()
+            .registerTypeHierarchyAdapter(Tile.class, TILES)
+            .registerTypeHierarchyAdapter(Item.class, ITEMS)
+            .registerTypeAdapter(AutoActor.class, ACTORS)
+            .registerTypeAdapter(Move.class, MOVES)
+            .create();
+
+    /**
+     * One cell of a board as stored in a file.
+     *
+     * @param x       the x position written in the file
+     * @param y       the y position written in the file
+     * @param kind    the kind of tile, with treasure as its own kind
+     * @param message the message of an information field, or null
+     */
+    public record Cell(int x, int y, TileKind kind, String message) {
+    }
+
+    private JsonAdapters() {
+    }
+
+    private static void name(TileKind kind, String name) {
+        NAMES[kind.ordinal()] = name;
+        KINDS.put(name, kind);
+    }
+
+    /**
+     * Get the name that a kind of tile is stored as.
+     *
+     * @param kind the kind of tile
+     * @return the name
+     */
+    public static String nameOf(TileKind kind) {
+        return NAMES[kind.ordinal()];
+    }
+
+    /**
+     * Get the kind of tile stored under a name.
+     *
+     * @param name the name
+     * @return the kind of tile, or free if the name is not known
+     */
+    public static TileKind kindOf(String name) {
+        return KINDS.getOrDefault(name, TileKind.FREE);
+    }
+
+    /**
+     * Get the inventory item stored under a name.
+     *
+     * @param name the name, such as "Key_Red"
+     * @return the item, or null if the name is not an item
+     */
+    public static Item itemOf(String name) {
+        TileKind kind = KINDS.get(name);
+        if (kind == null || kind.getColour() == null || kind != TileKind.key(kind.getColour())) {
+            return null;
+        }
+        return Key.of(kind.getColour());
+    }
+
+    /**
+     * Write one cell object. Treasure is written as a free tile holding a
+     * treasure item, as in the level files.
+     *
+     * @param out     the writer
+     * @param x       the x position of the cell
+     * @param y       the y position of the cell
+     * @param kind    the kind of tile
+     * @param message the message of an information field, or null
+     * @throws IOException if the cell cannot be written
+     */
+    public static void writeCell(JsonWriter out, int x, int y, TileKind kind, String message) throws IOException {
+        boolean treasure = kind == TileKind.TREASURE;
+        out.beginObject();
+        out.name("x").value(x).name("y").value(y);
+        out.name("tile").value(nameOf(treasure ? TileKind.FREE : kind));
+        out.name("item").value(treasure ? nameOf(TileKind.TREASURE) : "none");
+        if (message != null) {
+            out.name("message").value(message);
+        }
+        out.endObject();
+    }
+
+    /**
+     * Read one cell object, in any key order.
+     *
+     * @param in the reader
+     * @return the cell
+     * @throws IOException if the cell cannot be read
+     */
+    public static Cell readCell(JsonReader in) throws IOException {
+        int x = 0;
+        int y = 0;
+        TileKind kind = TileKind.FREE;
+        boolean treasure = false;
+        String message = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "x" -> x = in.nextInt();
+                case "y" -> y = in.nextInt();
+                case "tile" -> kind = kindOf(in.nextString());
+                case "item" -> treasure = kindOf(in.nextString()) == TileKind.TREASURE;
+                case "message" -> message = in.nextString();
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return new Cell(x, y, treasure ? TileKind.TREASURE : kind, message);
+    }
+}
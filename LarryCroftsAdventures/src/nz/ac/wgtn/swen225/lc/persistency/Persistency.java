@@ -1,7 +1,7 @@
 package nz.ac.wgtn.swen225.lc.persistency;
 
-import com.google.gson.*;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 import nz.ac.wgtn.swen225.lc.app.App;
 import nz.ac.wgtn.swen225.lc.app.Move;
@@ -11,11 +11,18 @@ import nz.ac.wgtn.swen225.lc.domain.items.Key;
 import nz.ac.wgtn.swen225.lc.domain.tiles.*;
 
 import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
 import java.io.*;
-import java.time.Instant;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * This class handles the persistence of the game state, allowing loading and
@@ -45,9 +52,29 @@ public class Persistency {
 
     public String message;
 
+    public Map<Integer, String> messages = new HashMap<>();
+
+    public int width;
+
+    public int height;
+
+    /**
+     * Whether saves and converted files write the board as a palette of tile
+     * names and run-length encoded rows instead of one object per cell. Both
+     * forms are recognised when loading.
+     */
+    public boolean compactBoard;
+
+    /**
+     * Whether saves are written with gzip compression, which adds
+     * {@link Compression#GZIP_EXTENSION} to their names. Compressed files are
+     * recognised when loading whatever they are called.
+     */
+    public boolean compressSaves;
+
     /////////////////////
     public int newFileNumToSave;
-    public ArrayList<Move> actionsToSave;
+    public List<Move> actionsToSave;
     public int playerXToSave;
     public int playerYToSave;
     public int playerTreasureCountToSave;
@@ -78,111 +105,437 @@ public class Persistency {
      * @throws FileNotFoundException If the specified file is not found.
      */
     public Tile[][] loadGame(File fileName) throws FileNotFoundException {
-        Tile[][] maze = null;
+        byte[] cells = loadBoard(fileName);
+        if (cells == null) {
+            return null;
+        }
+        Tile[][] maze = new Tile[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                maze[x][y] = TileKind.fromCode(cells[y * width + x]).create(x, y);
+            }
+        }
+        return maze;
+    }
+
+    /**
+     * Loads game from a JSON or binary file straight into a compact board, one
+     * {@link TileKind} code per cell in row order. The file is read token by
+     * token, so no tree of the whole file is built and cells are stored as soon
+     * as they are read. The other fields of the game state, including
+     * {@link #width} and {@link #height}, are set as a side effect. If the file
+     * is the base of a {@link SaveJournal}, its log is replayed on top.
+     *
+     * @param fileName The name of the file containing the game state.
+     * @return The cell codes, or null if the file could not be read.
+     * @throws FileNotFoundException If the specified file is not found.
+     */
+    public byte[] loadBoard(File fileName) throws FileNotFoundException {
+        try {
+            return readCells(fileName);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Loads game from a file the same way as {@link #loadBoard(File)}, but
+     * reports a file that cannot be read to the caller instead.
+     *
+     * @param fileName The name of the file containing the game state.
+     * @return The cell codes, or null if the file has no board.
+     * @throws IOException If the file cannot be read or is not a level or save.
+     */
+    byte[] readCells(File fileName) throws IOException {
+        byte[] cells;
         actors = new ArrayList<>();
-        try (JsonReader reader = new JsonReader(new FileReader(fileName))) {
-            // Read the JSON file and parse it into a JsonObject
-            JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
-
-            // Get board information
-            JsonArray boardArray = jsonObject.getAsJsonArray("board");
-            JsonArray inventoryArray = jsonObject.getAsJsonArray("inventory");
-
-            for (int i = 0; i < inventoryArray.size(); i++) {
-                JsonArray rowArray = inventoryArray.get(i).getAsJsonArray();
-                for (int j = 0; j < rowArray.size(); j++) {
-                    String itemName = rowArray.get(j).getAsString();
-                    invent[i][j] = switch (itemName){
-                        case "Key_Blue" -> new Key(Key.Colour.BLUE);
-                        case "Key_Yellow" -> new Key(Key.Colour.YELLOW);
-                        case "Key_Red" -> new Key(Key.Colour.RED);
-                        case "Key_Green" -> new Key(Key.Colour.GREEN);
-                        default -> null;
-                    };
+        invent = new Item[2][4];
+        message = null;
+        messages = new HashMap<>();
+        try {
+            if (BinaryLevel.isBinary(fileName)) {
+                if (!fileName.isFile()) {
+                    throw new FileNotFoundException(fileName.getPath());
+                }
+                cells = BinaryLevel.read(fileName, this);
+            } else {
+                cells = readJson(fileName);
+            }
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Not a level or save: " + fileName, e);
+        }
+        if (cells != null) {
+            SaveJournal.replay(fileName, this, cells);
+        }
+        return cells;
+    }
 
+    /**
+     * Reads the fields and cells of a level or save in either JSON form.
+     *
+     * @return the cell codes
+     */
+    private byte[] readJson(File fileName) throws IOException {
+        byte[] cells = null;
+        List<String> palette = null;
+        List<String> rows = null;
+        List<CellMessage> rowMessages = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(
+                new InputStreamReader(Compression.open(fileName), StandardCharsets.UTF_8))) {
+            reader.setLenient(true);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "player" -> readPlayer(reader);
+                    case "timeLeft" -> timeLeft = reader.nextInt();
+                    case "level" -> level = reader.nextInt();
+                    case "playerTreasureCount" -> playerTreasureCount = reader.nextInt();
+                    case "boardTreasureCount" -> boardTreasureCount = reader.nextInt();
+                    case "inventory" -> readInventory(reader);
+                    case "enemies" -> readEnemies(reader);
+                    case "board" -> cells = readBoard(reader);
+                    case "palette" -> palette = readStrings(reader);
+                    case "rows" -> rows = readStrings(reader);
+                    case "messages" -> readMessages(reader, rowMessages);
+                    default -> reader.skipValue();
                 }
             }
-            //chap.setInventory(invent);
+            reader.endObject();
+            if (rows != null) {
+                cells = decodeRows(palette, rows);
+            }
+            for (CellMessage cellMessage : rowMessages) {
+                message = cellMessage.message();
+                messages.put(cellMessage.y() * width + cellMessage.x(), message);
+            }
+            originalBoardTreasureCount = boardTreasureCount;
+        }
+        return cells;
+    }
+
+    /**
+     * Reads the player's starting position.
+     */
+    private void readPlayer(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "x" -> playerX = reader.nextInt();
+                case "y" -> playerY = reader.nextInt();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
 
-            int numRows = boardArray.size();
-            int numCols = boardArray.get(0).getAsJsonArray().size();
+    /**
+     * Reads the rows of item names in the inventory.
+     */
+    private void readInventory(JsonReader reader) throws IOException {
+        reader.beginArray();
+        for (int i = 0; reader.hasNext(); i++) {
+            reader.beginArray();
+            for (int j = 0; reader.hasNext(); j++) {
+                Item item = JsonAdapters.ITEMS.read(reader);
+                if (i < invent.length && j < invent[i].length) {
+                    invent[i][j] = item;
+                }
+            }
+            reader.endArray();
+        }
+        reader.endArray();
+    }
 
-            // Initialize the maze array based on board dimensions
-            maze = new Tile[numCols][numRows];
+    /**
+     * Reads the positions of the enemies, if there is an array of them.
+     */
+    private void readEnemies(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            actors.add(JsonAdapters.ACTORS.read(reader));
+        }
+        reader.endArray();
+    }
 
-            // Get player information
-            JsonObject playerObject = jsonObject.getAsJsonObject("player");
-            playerX = playerObject.get("x").getAsInt();
-            playerY = playerObject.get("y").getAsInt();
+    /**
+     * Reads the rows of cells on the board, appending each cell's code to the
+     * board as it is read.
+     *
+     * @return the cell codes in row order
+     */
+    private byte[] readBoard(JsonReader reader) throws IOException {
+        ByteArrayOutputStream cells = new ByteArrayOutputStream();
+        height = 0;
+        width = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int x = 0;
+            reader.beginArray();
+            while (reader.hasNext()) {
+                cells.write(readCell(reader, x, height));
+                x++;
+            }
+            reader.endArray();
+            if (height == 0) {
+                width = x;
+            } else if (x != width) {
+                throw new IllegalStateException("Row " + height + " has " + x + " cells, expected " + width);
+            }
+            height++;
+        }
+        reader.endArray();
+        return cells.toByteArray();
+    }
 
-            // Get time, level, treasure amount and initialize message
-            timeLeft = jsonObject.get("timeLeft").getAsInt();
+    /**
+     * Reads one cell object, ignoring its redundant coordinates.
+     *
+     * @return the code of the cell's tile kind
+     */
+    private byte readCell(JsonReader reader, int x, int y) throws IOException {
+        JsonAdapters.Cell cell = JsonAdapters.readCell(reader);
+        if (cell.message() != null) {
+            message = cell.message();
+            messages.put(y * width + x, message);
+        }
+        return cell.kind().code();
+    }
 
-            playerTreasureCount = jsonObject.get("playerTreasureCount").getAsInt();
-            boardTreasureCount = jsonObject.get("boardTreasureCount").getAsInt();
-            level = jsonObject.get("level").getAsInt();
-            message = null;
+    /**
+     * The message of an information field in a compact board, which is placed
+     * once the width of the board is known.
+     */
+    private record CellMessage(int x, int y, String message) {
+    }
 
-            if (jsonObject.has("enemies")) {
-                JsonArray enemiesArray = jsonObject.getAsJsonArray("enemies");
-                System.out.println(enemiesArray);
-                for (JsonElement enemyElement : enemiesArray) {
-                    JsonObject enemyObject = enemyElement.getAsJsonObject();
+    /**
+     * Reads an array of strings.
+     */
+    private static List<String> readStrings(JsonReader reader) throws IOException {
+        List<String> strings = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            strings.add(reader.nextString());
+        }
+        reader.endArray();
+        return strings;
+    }
 
-                    int enemyX = enemyObject.get("x").getAsInt();
-                    int enemyY = enemyObject.get("y").getAsInt();
-                    AutoActor enemy = new AutoActor(enemyX, enemyY, AutoActor.Direction.UP, Instant.now(), chap);
-                    actors.add(enemy);
+    /**
+     * Reads the messages of the information fields in a compact board.
+     */
+    private static void readMessages(JsonReader reader, List<CellMessage> cellMessages) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int x = 0;
+            int y = 0;
+            String text = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "x" -> x = reader.nextInt();
+                    case "y" -> y = reader.nextInt();
+                    case "message" -> text = reader.nextString();
+                    default -> reader.skipValue();
                 }
             }
+            reader.endObject();
+            cellMessages.add(new CellMessage(x, y, text));
+        }
+        reader.endArray();
+    }
 
-            // Populate the maze array
-            for (int i = 0; i < numRows; i++) {
-                JsonArray columnArray = boardArray.get(i).getAsJsonArray();
-                for (int j = 0; j < numCols; j++) {
-                    JsonObject cellObject = columnArray.get(j).getAsJsonObject(); // Access cell data
-
-                    // Get tile and item information from JSON
-                    String tileType = cellObject.get("tile").getAsString();
-                    String item = cellObject.get("item").getAsString();
-                    if (cellObject.has("message")) {
-                        message = cellObject.get("message").getAsString();
-                    }
-
-                    // Create each tile based on tileType and item
-                    maze[j][i] = switch (tileType) {
-                        case "Free" -> new Free(j, i);
-                        case "Wall" -> new Wall(j, i);
-                        case "Door_Yellow" -> new Door(Key.Colour.YELLOW, j, i);
-                        case "Door_Red" -> new Door(Key.Colour.RED, j, i);
-                        case "Door_Green" -> new Door(Key.Colour.GREEN, j, i);
-                        case "Door_Blue" -> new Door(Key.Colour.BLUE, j, i);
-                        case "Key_Yellow" -> new KeyTile(Key.Colour.YELLOW, j, i);
-                        case "Key_Red" -> new KeyTile(Key.Colour.RED, j, i);
-                        case "Key_Green" -> new KeyTile(Key.Colour.GREEN, j, i);
-                        case "Key_Blue" -> new KeyTile(Key.Colour.BLUE, j, i);
-                        case "InfoBox" -> new InfoField(j, i);
-                        case "ExitLock" -> maze[j][i] = new ExitLock(j, i);
-                        case "Exit" -> maze[j][i] = new Exit(j, i);
-                        default -> new Free(j, i);
-                    };
-
-                    switch (item) {
-                        case "Treasure" -> maze[j][i] = new Treasure(j, i);
-                    }
+    /**
+     * Expands the run-length encoded rows of a compact board. Each row is a
+     * list of runs separated by spaces, where a run is a palette index
+     * optionally followed by {@code *} and a count, so {@code "0*3 1"} is three
+     * cells of the first palette entry and one of the second.
+     *
+     * @return the cell codes in row order
+     */
+    private byte[] decodeRows(List<String> palette, List<String> rows) {
+        if (palette == null) {
+            throw new IllegalStateException("Board rows without a palette");
+        }
+        byte[] codes = new byte[palette.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = JsonAdapters.kindOf(palette.get(i)).code();
+        }
+        ByteArrayOutputStream cells = new ByteArrayOutputStream();
+        width = 0;
+        height = 0;
+        for (String row : rows) {
+            int x = 0;
+            for (String run : row.trim().split(" +")) {
+                int star = run.indexOf('*');
+                int index = Integer.parseInt(star < 0 ? run : run.substring(0, star));
+                int count = star < 0 ? 1 : Integer.parseInt(run.substring(star + 1));
+                for (int i = 0; i < count; i++) {
+                    cells.write(codes[index]);
                 }
+                x += count;
             }
-            originalBoardTreasureCount = jsonObject.get("boardTreasureCount").getAsInt();
-        } catch (IOException e) {
-            e.printStackTrace();
+            if (height == 0) {
+                width = x;
+            } else if (x != width) {
+                throw new IllegalStateException("Row " + height + " has " + x + " cells, expected " + width);
+            }
+            height++;
+        }
+        return cells.toByteArray();
+    }
+
+    /**
+     * Converts a JSON level or save into the binary format.
+     *
+     * @param json   the JSON file to read
+     * @param binary the binary file to write, which should end in ".lcb"
+     * @throws IOException if either file cannot be read or written
+     */
+    public void convertToBinary(File json, File binary) throws IOException {
+        byte[] cells = loadBoard(json);
+        if (cells == null) {
+            throw new IOException("Could not load " + json);
+        }
+        BinaryLevel.write(binary, this, cells);
+    }
+
+    /**
+     * Converts a binary level or save into the JSON format.
+     *
+     * @param binary the binary file to read
+     * @param json   the JSON file to write
+     * @throws IOException if either file cannot be read or written
+     */
+    public void convertToJson(File binary, File json) throws IOException {
+        byte[] cells = loadBoard(binary);
+        if (cells == null) {
+            throw new IOException("Could not load " + binary);
+        }
+        try (JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                Compression.wrap(new FileOutputStream(json), json), StandardCharsets.UTF_8)))) {
+            writer.setIndent("  ");
+            writer.beginObject();
+            writeHeader(writer, playerX, playerY, timeLeft, level, playerTreasureCount, boardTreasureCount, invent);
+            writer.name("enemies").beginArray();
+            for (AutoActor actor : actors) {
+                JsonAdapters.ACTORS.write(writer, actor);
+            }
+            writer.endArray();
+            writeBoard(writer, cells, width, height, messages, compactBoard);
+            writer.endObject();
+        }
+    }
+
+    /**
+     * Writes the player, counters and inventory of a level or save.
+     */
+    private static void writeHeader(JsonWriter writer, int x, int y, int timeLeft, int level,
+                                    int playerTreasureCount, int boardTreasureCount, Item[][] inventory)
+            throws IOException {
+        writer.name("player").beginObject().name("x").value(x).name("y").value(y).endObject();
+        writer.name("timeLeft").value(timeLeft);
+        writer.name("level").value(level);
+        writer.name("playerTreasureCount").value(playerTreasureCount);
+        writer.name("boardTreasureCount").value(boardTreasureCount);
+        writer.name("inventory").beginArray();
+        for (Item[] row : inventory) {
+            writer.beginArray();
+            for (Item item : row) {
+                JsonAdapters.ITEMS.write(writer, item);
+            }
+            writer.endArray();
+        }
+        writer.endArray();
+    }
+
+    /**
+     * Writes the board one cell at a time, so that nothing but the cells
+     * themselves is held in memory whatever the size of the board.
+     */
+    private static void writeBoard(JsonWriter writer, byte[] cells, int width, int height,
+                                   Map<Integer, String> messages, boolean compact) throws IOException {
+        if (compact) {
+            writeRows(writer, cells, width, height, messages);
+            return;
+        }
+        writer.name("board").beginArray();
+        for (int y = 0; y < height; y++) {
+            writer.beginArray();
+            for (int x = 0; x < width; x++) {
+                JsonAdapters.writeCell(writer, x, y, TileKind.fromCode(cells[y * width + x]),
+                        messages.get(y * width + x));
+            }
+            writer.endArray();
+        }
+        writer.endArray();
+    }
+
+    /**
+     * Writes the board as a palette of the tile names it uses and one string of
+     * runs per row, as read by {@link #decodeRows}.
+     */
+    private static void writeRows(JsonWriter writer, byte[] cells, int width, int height,
+                                  Map<Integer, String> messages) throws IOException {
+        int[] paletteIndex = new int[TileKind.values().length];
+        Arrays.fill(paletteIndex, -1);
+        writer.name("palette").beginArray();
+        int paletteSize = 0;
+        for (byte cell : cells) {
+            if (paletteIndex[cell] < 0) {
+                paletteIndex[cell] = paletteSize++;
+                TileKind kind = TileKind.fromCode(cell);
+                writer.value(JsonAdapters.nameOf(kind));
+            }
+        }
+        writer.endArray();
+        writer.name("rows").beginArray();
+        StringBuilder row = new StringBuilder();
+        for (int y = 0; y < height; y++) {
+            row.setLength(0);
+            int x = 0;
+            while (x < width) {
+                byte cell = cells[y * width + x];
+                int count = 1;
+                while (x + count < width && cells[y * width + x + count] == cell) {
+                    count++;
+                }
+                if (row.length() > 0) {
+                    row.append(' ');
+                }
+                row.append(paletteIndex[cell]);
+                if (count > 1) {
+                    row.append('*').append(count);
+                }
+                x += count;
+            }
+            writer.value(row.toString());
+        }
+        writer.endArray();
+        if (!messages.isEmpty()) {
+            writer.name("messages").beginArray();
+            for (Map.Entry<Integer, String> cellMessage : messages.entrySet()) {
+                writer.beginObject();
+                writer.name("x").value(cellMessage.getKey() % width);
+                writer.name("y").value(cellMessage.getKey() / width);
+                writer.name("message").value(cellMessage.getValue());
+                writer.endObject();
+            }
+            writer.endArray();
         }
-        return maze;
     }
 
     /**
      * Setter method to set the instance variables for saving parameters.
      */
-    public void setSaveParameters(int newFileNum, ArrayList<Move> actions, int x, int y, int playerTreasureCount,
+    public void setSaveParameters(int newFileNum, List<Move> actions, int x, int y, int playerTreasureCount,
                                   int boardTreasureCount, int level, int timeLeft, Tile[][] board, Item[][] invent) {
         this.newFileNumToSave = newFileNum;
         this.actionsToSave = actions;
@@ -198,174 +551,152 @@ public class Persistency {
     }
 
     /**
-     * Saves the current game state to a JSON file.
-     */
-    /**
-     * Saves the current game state to a JSON file.
+     * Saves the current game state to a new JSON file. The state given to
+     * {@link #setSaveParameters} is copied straight away and written on a
+     * background thread by the {@link SaveQueue}. The file is numbered after
+     * the newest save with the same name in the saves directory, going by the
+     * file names alone, and the {@link SaveCatalog} is updated on the save
+     * thread once the file is written. Since every save goes to a new file,
+     * saves made in quick succession are all written rather than merged.
+     *
+     * @param savename the start of the save file name
+     * @return a future that completes with the save file once it is written
      */
-    public void saveGame(String savename) throws IOException {
-        File savesDirectory = new File("LarryCroftsAdventures" + File.separator + "Saves");
-        savesDirectory.mkdir();
-        newFileNum++;
+    public CompletableFuture<File> saveGame(String savename) {
+        newFileNum = Math.max(newFileNum + 1, SaveCatalog.nextNumber(SaveCatalog.SAVES, savename));
 
         // Create a new save file
-        newFile = new File(savesDirectory, savename + newFileNum + ".json");
-
-        FileWriter fileWriter = new FileWriter(newFile);
-        JsonWriter jsonWriter = new JsonWriter(fileWriter);
-        JsonObject gameData = new JsonObject();
-        Gson gson = new Gson();
-
-        JsonObject playerObject = new JsonObject();
-        playerObject.addProperty("x", playerXToSave);
-        playerObject.addProperty("y", playerYToSave);
-
-        gameData.add("player", playerObject);
-        gameData.addProperty("timeLeft", timeLeftToSave);
-        gameData.addProperty("level", levelToSave);
-        gameData.addProperty("playerTreasureCount", playerTreasureCountToSave);
-        gameData.addProperty("boardTreasureCount", boardTreasureCountToSave);
-
-        JsonArray inventoryArray = new JsonArray();
-        // Iterate through the inventory and add each item to the JSON array
-
-        for (Item[] row : invent) {
-            JsonArray rowArray = new JsonArray();
-            for (Item item : row) {
-                if (item == null) {
-                    rowArray.add("none");
-                } else if (item instanceof Key key) {
-                    String colorName = ((Key) item).colour().name();
-                    rowArray.add("Key_" + colorName.substring(0, 1).toUpperCase() + colorName.substring(1).toLowerCase());
-                }
-            }
-            inventoryArray.add(rowArray);
-        }
-        // Add the inventory array to the gameData object
-        gameData.add("inventory", inventoryArray);
-
-        JsonArray actionsArray = new JsonArray();
-        if (this.actionsToSave != null) {
-            for (Move move : this.actionsToSave) {
-                actionsArray.add(move.move());
+        newFile = new File(SaveCatalog.SAVES,
+                savename + newFileNum + ".json" + (compressSaves ? Compression.GZIP_EXTENSION : ""));
+
+        SaveSnapshot snapshot = SaveSnapshot.of(actionsToSave, playerXToSave, playerYToSave,
+                playerTreasureCountToSave, boardTreasureCountToSave, levelToSave, timeLeftToSave, boardToSave, invent)
+                .withCompactBoard(compactBoard);
+        SaveQueue queue = SaveQueue.getShared();
+        return queue.submit(newFile, snapshot).thenApplyAsync(file -> {
+            try {
+                // opening the catalog can read every save, so it is done on the save thread
+                SaveCatalog.getShared().add(file, snapshot);
+            } catch (IOException e) {
+                // reported like a failed save
+                throw new CompletionException(e);
             }
-        }
-        gameData.add("actions", actionsArray);
-
-        JsonArray boardArray = new JsonArray();
-        for (int i = 0; i < 15; i++) {
-            JsonArray rowArray = new JsonArray();
-            for (int j = 0; j < 15; j++) {
-                JsonObject cellObject = new JsonObject();
-                cellObject.addProperty("x", j);
-                cellObject.addProperty("y", i);
-
-                // Get the tile and item from the board
-                Tile currentTile = boardToSave[j][i];
-                switch (currentTile.getClass().getSimpleName()) {
-                    case "Free":
-                        cellObject.addProperty("tile", "Free");
-                        break;
-                    case "Wall":
-                        cellObject.addProperty("tile", "Wall");
-                        break;
-                    case "Door":
-                        Key.Colour doorColour = ((Door) currentTile).getColour();
-                        if (doorColour == Key.Colour.RED) {
-                            cellObject.addProperty("tile", "Door_Red");
-                        }
-                        if (doorColour == Key.Colour.BLUE) {
-                            cellObject.addProperty("tile", "Door_Blue");
-                        }
-                        if (doorColour == Key.Colour.GREEN) {
-                            cellObject.addProperty("tile", "Door_Green");
-                        }
-                        if (doorColour == Key.Colour.YELLOW) {
-                            cellObject.addProperty("tile", "Door_Yellow");
-                        }
-                        break;
-                    case "KeyTile":
-                        Key.Colour keyColour = ((KeyTile) currentTile).getColour();
-                        if (keyColour == Key.Colour.RED) {
-                            cellObject.addProperty("tile", "Key_Red");
-                        }
-                        if (keyColour == Key.Colour.BLUE) {
-                            cellObject.addProperty("tile", "Key_Blue");
-                        }
-                        if (keyColour == Key.Colour.GREEN) {
-                            cellObject.addProperty("tile", "Key_Green");
-                        }
-                        if (keyColour == Key.Colour.YELLOW) {
-                            cellObject.addProperty("tile", "Key_Yellow");
-                        }
-                        break;
-                    case "InfoField":
-                        cellObject.addProperty("tile", "InfoBox");
-                        break;
-                    case "ExitLock":
-                        cellObject.addProperty("tile", "ExitLock");
-                        break;
-                    case "Exit":
-                        cellObject.addProperty("tile", "Exit");
-                        break;
-                    default:
-                        cellObject.addProperty("tile", "none");
-                }
-
-                String itemType = switch (currentTile.getClass().getSimpleName()) {
-                    case "Treasure" -> "Treasure";
-                    default -> "none";
-                };
-                cellObject.addProperty("item", itemType);
+            return file;
+        }, queue.getExecutor());
+    }
 
-                rowArray.add(cellObject);
-            }
-            boardArray.add(rowArray);
-        }
-        gameData.add("board", boardArray);
+    /**
+     * Get the file that the last call to {@link #saveGame(String)} saves to.
+     * The file is chosen straight away, but may not have been written yet.
+     *
+     * @return the save file, or null if no save has been made
+     */
+    public File getSaveFile() {
+        return newFile;
+    }
 
+    /**
+     * Writes a snapshot of a game as JSON.
+     *
+     * @param writer   where to write the JSON
+     * @param snapshot the state to save
+     * @throws IOException if the JSON cannot be written
+     */
+    static void writeSave(Writer writer, SaveSnapshot snapshot) throws IOException {
+        JsonWriter jsonWriter = new JsonWriter(writer);
         jsonWriter.setIndent("    ");
-
-        // Write game data to the file
-        gson.toJson(gameData, jsonWriter);
-
-        // Close writers
-        System.out.println("Game saved...");
-        jsonWriter.close();
-        fileWriter.close();
+        jsonWriter.beginObject();
+        writeHeader(jsonWriter, snapshot.playerX(), snapshot.playerY(), snapshot.timeLeft(), snapshot.level(),
+                snapshot.playerTreasureCount(), snapshot.boardTreasureCount(), snapshot.inventory());
+        jsonWriter.name("actions").beginArray();
+        for (Move move : snapshot.actions()) {
+            JsonAdapters.MOVES.write(jsonWriter, move);
+        }
+        jsonWriter.endArray();
+        writeBoard(jsonWriter, snapshot.cells(), snapshot.width(), snapshot.height(), Map.of(),
+                snapshot.compactBoard());
+        jsonWriter.endObject();
+        jsonWriter.flush();
     }
 
+    /**
+     * Gets the item stored under a name.
+     *
+     * @param itemName the name, such as "Key_Red"
+     * @return the item, or null if the name is not an item
+     */
     Item getItemByName(String itemName) {
-        switch (itemName) {
-            case "Key_Yellow":
-                return new Key(Key.Colour.YELLOW);
-            case "Key_Red":
-                return new Key(Key.Colour.RED);
-            case "Key_Green":
-                return new Key(Key.Colour.GREEN);
-            case "Key_Blue":
-                return new Key(Key.Colour.BLUE);
-            default:
-                return null;
-        }
+        return JsonAdapters.itemOf(itemName);
     }
 
+    /**
+     * Lets the player pick a save from the {@link SaveCatalog} and resumes it.
+     * The list is built from the catalog index, so no save is opened until one
+     * is picked. The catalog is brought up to date on the save thread, and the
+     * list is shown once it is.
+     */
     public void resumeGame() {
-        JFileChooser fileChooser = new JFileChooser("LarryCroftsAdventures/Saves");
-        fileChooser.setDialogTitle("Choose a saved game file");
-        int result = fileChooser.showOpenDialog(null);
+        SaveCatalog.loadShared().whenComplete((loaded, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                // the saves can still be listed from memory
+                JOptionPane.showMessageDialog(null, "The save index could not be written: " + error.getMessage(),
+                        "Save failed", JOptionPane.ERROR_MESSAGE);
+            }
+            chooseSave(SaveCatalog.getShared());
+        }));
+    }
 
-        if (result == JFileChooser.APPROVE_OPTION) {
-            File selectedFile = fileChooser.getSelectedFile();
+    /**
+     * Shows the saves in the catalog and resumes the one picked.
+     */
+    private void chooseSave(SaveCatalog catalog) {
+        List<SaveCatalog.Entry> entries = catalog.getEntries();
+        if (entries.isEmpty()) {
+            JOptionPane.showMessageDialog(null, "There are no saved games.", "Resume Game", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
 
-            try {
-                // Load the selected saved game file
-                Tile[][] loadedGame = loadGame(selectedFile);
-                JOptionPane.showMessageDialog(null, "Game resumed successfully!", "Resume Game", JOptionPane.INFORMATION_MESSAGE);
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-                JOptionPane.showMessageDialog(null, "Error loading the saved game file.", "Error", JOptionPane.ERROR_MESSAGE);
+        String[] columns = {"Save", "Level", "Time left", "Treasures", "Treasures left", "Saved"};
+        Object[][] rows = new Object[entries.size()][];
+        for (int i = 0; i < rows.length; i++) {
+            SaveCatalog.Entry entry = entries.get(i);
+            rows[i] = new Object[]{entry.name(), entry.level(), entry.timeLeft(), entry.playerTreasureCount(),
+                    entry.boardTreasureCount(), new Date(entry.lastModified())};
+        }
+        JTable table = new JTable(new DefaultTableModel(rows, columns) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
             }
+
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return column == 0 ? String.class : rows[0][column].getClass();
+            }
+        });
+        table.setAutoCreateRowSorter(true);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.getRowSorter().toggleSortOrder(5);
+        table.getRowSorter().toggleSortOrder(5);
+        table.setRowSelectionInterval(0, 0);
+
+        int result = JOptionPane.showConfirmDialog(null, new JScrollPane(table), "Choose a saved game",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (result != JOptionPane.OK_OPTION || table.getSelectedRow() < 0) {
+            return;
+        }
+        File selectedFile = catalog.getFile(entries.get(table.convertRowIndexToModel(table.getSelectedRow())));
+        if (app != null) {
+            app.setup(selectedFile);
+            return;
+        }
+        try {
+            // Load the selected saved game file
+            Tile[][] loadedGame = loadGame(selectedFile);
+            JOptionPane.showMessageDialog(null, "Game resumed successfully!", "Resume Game", JOptionPane.INFORMATION_MESSAGE);
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null, "Error loading the saved game file.", "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
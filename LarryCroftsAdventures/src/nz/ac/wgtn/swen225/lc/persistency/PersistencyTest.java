@@ -1,11 +1,25 @@
 package nz.ac.wgtn.swen225.lc.persistency;
 
+import com.google.gson.Gson;
+import nz.ac.wgtn.swen225.lc.app.Move;
+import nz.ac.wgtn.swen225.lc.domain.Board;
+import nz.ac.wgtn.swen225.lc.domain.Chap;
+import nz.ac.wgtn.swen225.lc.domain.GameEngine;
 import nz.ac.wgtn.swen225.lc.domain.items.Item;
-import nz.ac.wgtn.swen225.lc.domain.tiles.Tile;
+import nz.ac.wgtn.swen225.lc.domain.items.Key;
+import nz.ac.wgtn.swen225.lc.domain.tiles.*;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -72,6 +86,466 @@ public class PersistencyTest {
         }
     }
 
+    @Test
+    public void testLoadBoardCells() throws FileNotFoundException {
+        Persistency persistency = new Persistency();
+        byte[] cells = persistency.loadBoard(Persistency.level1);
+        assertEquals(15 * 15, cells.length);
+        assertEquals(TileKind.DOOR_GREEN.code(), cells[3 * persistency.width + 5]);
+        int treasures = 0;
+        for (byte cell : cells) {
+            if (cell == TileKind.TREASURE.code()) {
+                treasures++;
+            }
+        }
+        assertEquals(persistency.boardTreasureCount, treasures);
+    }
+
+    @Test
+    public void testLoadAnyKeyOrder() throws IOException {
+        File file = File.createTempFile("level", ".json");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("{\"board\": [[{\"tile\": \"Wall\", \"item\": \"none\"}, {\"tile\": \"Free\", "
+                    + "\"item\": \"Treasure\"}]], \"enemies\": 0, \"level\": 3, \"timeLeft\": \"12\", "
+                    + "\"player\": {\"x\": 1, \"y\": 0}, \"inventory\": [[\"Key_Red\"]], "
+                    + "\"playerTreasureCount\": 0, \"boardTreasureCount\": 1}");
+        }
+        Persistency persistency = new Persistency();
+        Tile[][] loadedGame = persistency.loadGame(file);
+        assertEquals(2, loadedGame.length);
+        assertEquals(1, loadedGame[0].length);
+        assertTrue(loadedGame[0][0] instanceof Wall);
+        assertTrue(loadedGame[1][0] instanceof Treasure);
+        assertEquals(12, persistency.timeLeft);
+        assertEquals(3, persistency.level);
+        assertEquals(new Key(Key.Colour.RED), persistency.invent[0][0]);
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        File binary = File.createTempFile("level2", ".lcb");
+        File json = File.createTempFile("level2", ".json");
+        binary.deleteOnExit();
+        json.deleteOnExit();
+        Persistency original = new Persistency();
+        byte[] cells = original.loadBoard(Persistency.level2);
+        new Persistency().convertToBinary(Persistency.level2, binary);
+        assertTrue(binary.length() < Persistency.level2.length() / 10);
+
+        Persistency fromBinary = new Persistency();
+        assertArrayEquals(cells, fromBinary.loadBoard(binary));
+        assertEquals(original.playerX, fromBinary.playerX);
+        assertEquals(original.playerY, fromBinary.playerY);
+        assertEquals(original.timeLeft, fromBinary.timeLeft);
+        assertEquals(original.boardTreasureCount, fromBinary.boardTreasureCount);
+        assertEquals(original.level, fromBinary.level);
+        assertEquals(original.width, fromBinary.width);
+
+        new Persistency().convertToJson(binary, json);
+        Persistency fromJson = new Persistency();
+        assertArrayEquals(cells, fromJson.loadBoard(json));
+        assertEquals(original.timeLeft, fromJson.timeLeft);
+    }
+
+    @Test
+    public void testSaveQueueWritesSave() throws Exception {
+        File directory = Files.createTempDirectory("saves").toFile();
+        File target = new File(directory, "save1.json");
+        target.deleteOnExit();
+        directory.deleteOnExit();
+        SaveQueue queue = new SaveQueue(Runnable::run);
+        File saved = queue.submit(target, snapshot(42)).get();
+        assertEquals(target.getAbsoluteFile(), saved);
+        String[] left = directory.list();
+        assertNotNull(left);
+        assertEquals(1, left.length);
+
+        Persistency persistency = new Persistency();
+        persistency.loadGame(target);
+        assertEquals(42, persistency.timeLeft);
+        assertEquals(Key.of(Key.Colour.RED), persistency.invent[0][0]);
+    }
+
+    @Test
+    public void testSaveQueueReplacesQueuedSave() throws Exception {
+        File target = File.createTempFile("save", ".json");
+        target.deleteOnExit();
+        List<Runnable> tasks = new ArrayList<>();
+        SaveQueue queue = new SaveQueue(tasks::add);
+        CompletableFuture<File> first = queue.submit(target, snapshot(10));
+        CompletableFuture<File> second = queue.submit(target, snapshot(20));
+        assertEquals(1, tasks.size());
+        assertFalse(first.isDone());
+        tasks.get(0).run();
+        assertEquals(second.get(), first.get());
+
+        Persistency persistency = new Persistency();
+        persistency.loadGame(target);
+        assertEquals(20, persistency.timeLeft);
+    }
+
+    @Test
+    public void testSaveFollowsBoardSize() throws Exception {
+        File target = File.createTempFile("save", ".json");
+        target.deleteOnExit();
+        Persistency original = new Persistency();
+        byte[] cells = original.loadBoard(Persistency.level2);
+        Tile[][] board = new Persistency().loadGame(Persistency.level2);
+        SaveSnapshot snapshot = SaveSnapshot.of(null, original.playerX, original.playerY, 0,
+                original.boardTreasureCount, 2, original.timeLeft, board, original.invent);
+        new SaveQueue(Runnable::run).submit(target, snapshot).get();
+
+        Persistency saved = new Persistency();
+        assertArrayEquals(cells, saved.loadBoard(target));
+        assertEquals(30, saved.width);
+        assertEquals(30, saved.height);
+    }
+
+    private static SaveSnapshot snapshot(int timeLeft) throws FileNotFoundException {
+        Tile[][] board = new Persistency().loadGame(Persistency.level1);
+        Item[][] inventory = new Item[2][4];
+        inventory[0][0] = Key.of(Key.Colour.RED);
+        return SaveSnapshot.of(null, 7, 6, 0, 10, 1, timeLeft, board, inventory);
+    }
+
+    @Test
+    public void testCompactBoardRoundTrip() throws IOException {
+        for (File level : List.of(Persistency.level1, Persistency.level2)) {
+            File compact = File.createTempFile("compact", ".json");
+            compact.deleteOnExit();
+            Persistency original = new Persistency();
+            byte[] cells = original.loadBoard(level);
+            Persistency converter = new Persistency();
+            converter.compactBoard = true;
+            converter.convertToJson(level, compact);
+            assertTrue(compact.length() * 10 < level.length());
+
+            Persistency loaded = new Persistency();
+            assertArrayEquals(cells, loaded.loadBoard(compact));
+            assertEquals(original.width, loaded.width);
+            assertEquals(original.height, loaded.height);
+            assertEquals(original.messages, loaded.messages);
+            assertEquals(original.playerX, loaded.playerX);
+        }
+    }
+
+    @Test
+    public void testCompactBoardAnyKeyOrder() throws IOException {
+        File file = File.createTempFile("compact", ".json");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("{\"messages\": [{\"x\": 1, \"y\": 1, \"message\": \"hi\"}],"
+                    + "\"rows\": [\"0*3\", \"0 1 2\"], \"palette\": [\"Wall\", \"InfoBox\", \"Treasure\"],"
+                    + "\"player\": {\"x\": 0, \"y\": 1}}");
+        }
+        Persistency persistency = new Persistency();
+        byte[] cells = persistency.loadBoard(file);
+        assertEquals(3, persistency.width);
+        assertEquals(2, persistency.height);
+        assertEquals(TileKind.INFO_FIELD.code(), cells[4]);
+        assertEquals(TileKind.TREASURE.code(), cells[5]);
+        assertEquals("hi", persistency.messages.get(4));
+    }
+
+    @Test
+    public void testJournalReplaysChanges() throws IOException {
+        File base = tempSaveFile();
+        GameEngine engine = new GameEngine(new Board(Persistency.level1));
+        SaveJournal journal = new SaveJournal(base, engine, 4, SaveJournal.COMPACT_BYTES);
+        engine.setListener(journal);
+        engine.move(Chap.Direction.RIGHT);
+        engine.move(Chap.Direction.RIGHT);
+        engine.move(Chap.Direction.UP);
+        engine.tick();
+        engine.tick();
+        journal.flush();
+        assertTrue(journal.getLogSize() < 64);
+        journal.close();
+
+        assertMatchesJournal(engine, base);
+    }
+
+    @Test
+    public void testJournalCompacts() throws IOException {
+        File base = tempSaveFile();
+        GameEngine engine = new GameEngine(new Board(Persistency.level1));
+        SaveJournal journal = new SaveJournal(base, engine, 1, 20);
+        engine.setListener(journal);
+        long headerSize = journal.getLogSize();
+        engine.move(Chap.Direction.RIGHT);
+        engine.move(Chap.Direction.RIGHT);
+        engine.move(Chap.Direction.UP);
+        engine.move(Chap.Direction.LEFT);
+        assertTrue(journal.getLogSize() <= 20);
+        journal.close();
+
+        assertMatchesJournal(engine, base);
+        assertTrue(headerSize > 0);
+    }
+
+    @Test
+    public void testJournalIgnoresStaleLog() throws IOException {
+        File base = tempSaveFile();
+        GameEngine engine = new GameEngine(new Board(Persistency.level1));
+        try (SaveJournal journal = new SaveJournal(base, engine, 1, SaveJournal.COMPACT_BYTES)) {
+            engine.setListener(journal);
+            engine.move(Chap.Direction.RIGHT);
+        }
+        // a newer base written without the journal, as after a crash during compaction
+        new SaveQueue(Runnable::run).submit(base, snapshot(33)).join();
+
+        Persistency persistency = new Persistency();
+        persistency.loadBoard(base);
+        assertEquals(7, persistency.playerX);
+        assertEquals(33, persistency.timeLeft);
+    }
+
+    @Test
+    public void testCheckpointerWritesJournal() throws IOException {
+        File base = tempSaveFile();
+        GameEngine engine = new GameEngine(new Board(Persistency.level1));
+        SaveJournal journal = new SaveJournal(base, engine);
+        Checkpointer checkpointer = new Checkpointer(engine, journal);
+        engine.addListener(journal);
+        engine.addListener(checkpointer);
+        engine.move(Chap.Direction.RIGHT);
+        engine.move(Chap.Direction.RIGHT);
+        for (int i = 0; i < Checkpointer.EVERY_SECONDS; i++) {
+            engine.tick();
+        }
+        assertEquals(base.getAbsoluteFile(), checkpointer.getLastWrite().join());
+        // the checkpoint is on disk without closing the journal
+        assertMatchesJournal(engine, base);
+        journal.close();
+    }
+
+    private static File tempSaveFile() throws IOException {
+        File directory = Files.createTempDirectory("saves").toFile();
+        directory.deleteOnExit();
+        File base = new File(directory, "save.json");
+        base.deleteOnExit();
+        SaveJournal.logFor(base).deleteOnExit();
+        return base;
+    }
+
+    private static void assertMatchesJournal(GameEngine engine, File base) throws IOException {
+        Board board = engine.getBoard();
+        Persistency persistency = new Persistency();
+        byte[] cells = persistency.loadBoard(base);
+        assertEquals(board.getChap().getX(), persistency.playerX);
+        assertEquals(board.getChap().getY(), persistency.playerY);
+        assertEquals(board.getChap().getPlayerTreasureCount(), persistency.playerTreasureCount);
+        assertEquals(engine.getTimeLeft(), persistency.timeLeft);
+        assertArrayEquals(board.getChap().getInventory(), persistency.invent);
+        for (int y = 0; y < board.getHeight(); y++) {
+            for (int x = 0; x < board.getWidth(); x++) {
+                assertEquals(board.getKind(x, y).code(), cells[y * persistency.width + x]);
+            }
+        }
+    }
+
+    @Test
+    public void testCheckpointRing() {
+        GameEngine engine = new GameEngine(new Board(Persistency.level1));
+        Checkpointer checkpointer = new Checkpointer(engine, null, 3, 2, 5);
+        engine.setListener(checkpointer);
+        engine.move(Chap.Direction.RIGHT);
+        assertTrue(checkpointer.getCheckpoints().isEmpty());
+        engine.move(Chap.Direction.RIGHT);
+        assertEquals(1, checkpointer.getCheckpoints().size());
+        assertEquals(9, checkpointer.getCheckpoints().get(0).playerX());
+        for (int i = 0; i < 5; i++) {
+            engine.tick();
+        }
+        assertEquals(2, checkpointer.getCheckpoints().size());
+        assertEquals(engine.getTimeLeft(), checkpointer.getCheckpoints().get(0).timeLeft());
+        for (int i = 0; i < 4; i++) {
+            checkpointer.checkpoint();
+        }
+        assertEquals(3, checkpointer.getCheckpoints().size());
+        assertEquals(6, checkpointer.getStats().count());
+        assertTrue(checkpointer.getStats().maxNanos() >= checkpointer.getStats().averageNanos());
+    }
+
+    @Test
+    public void testCheckpointWritten() throws Exception {
+        File target = tempSaveFile();
+        GameEngine engine = new GameEngine(new Board(Persistency.level1));
+        Checkpointer checkpointer = new Checkpointer(engine, target, 2, 1, 1);
+        engine.setListener(checkpointer);
+        engine.move(Chap.Direction.RIGHT);
+        engine.move(Chap.Direction.RIGHT);
+        engine.move(Chap.Direction.UP);
+        checkpointer.getLastWrite().get();
+        assertMatchesJournal(engine, target);
+    }
+
+    @Test
+    public void testSaveCatalogTracksDirectory() throws Exception {
+        File directory = Files.createTempDirectory("catalog").toFile();
+        directory.deleteOnExit();
+        SaveQueue queue = new SaveQueue(Runnable::run);
+        File first = new File(directory, "saved-game-1.json");
+        File second = new File(directory, "saved-game-2.json");
+        queue.submit(first, snapshot(30)).get();
+        queue.submit(second, snapshot(40)).get();
+        Files.writeString(new File(directory, "notes.json").toPath(), "not a save");
+
+        SaveCatalog catalog = new SaveCatalog(directory);
+        assertEquals(2, catalog.getEntries().size());
+        assertEquals(30, catalog.getEntries().get(0).timeLeft());
+        assertEquals(1, catalog.getEntries().get(0).level());
+        assertEquals(3, catalog.nextNumber("saved-game-"));
+        assertTrue(new File(directory, SaveCatalog.INDEX_NAME).isFile());
+
+        assertTrue(first.delete());
+        File third = new File(directory, "saved-game-7.json");
+        queue.submit(third, snapshot(50)).get();
+        SaveCatalog reopened = new SaveCatalog(directory);
+        assertEquals(List.of("saved-game-2.json", "saved-game-7.json"),
+                reopened.getEntries().stream().map(SaveCatalog.Entry::name).toList());
+        assertEquals(8, reopened.nextNumber("saved-game-"));
+        assertEquals(8, SaveCatalog.nextNumber(directory, "saved-game-"));
+
+        for (File file : directory.listFiles()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Test
+    public void testSaveCatalogNoticesJournal() throws Exception {
+        File directory = Files.createTempDirectory("catalog").toFile();
+        directory.deleteOnExit();
+        File base = new File(directory, "autosave.json");
+        GameEngine engine = new GameEngine(new Board(Persistency.level1));
+        SaveJournal journal = new SaveJournal(base, engine, 1, SaveJournal.COMPACT_BYTES);
+        engine.addListener(journal);
+        journal.flush();
+        SaveCatalog catalog = new SaveCatalog(directory);
+        assertEquals(engine.getTimeLeft(), catalog.getEntries().get(0).timeLeft());
+
+        engine.tick();
+        engine.tick();
+        journal.close();
+        File log = SaveJournal.logFor(base);
+        // the base is untouched, so only the log shows the change
+        assertTrue(log.setLastModified(log.lastModified() + 2000));
+        catalog.refresh();
+        assertEquals(engine.getTimeLeft(), catalog.getEntries().get(0).timeLeft());
+        for (File file : directory.listFiles()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Test
+    public void testSaveCatalogReportsIndexFailure() throws Exception {
+        File directory = Files.createTempDirectory("catalog").toFile();
+        directory.deleteOnExit();
+        File save = new File(directory, "saved-game-1.json");
+        new SaveQueue(Runnable::run).submit(save, snapshot(30)).get();
+        File notes = new File(directory, "notes.json");
+        Files.writeString(notes.toPath(), "not a save");
+        // a directory in the way of the index, so it cannot be replaced
+        File blocked = new File(directory, SaveCatalog.INDEX_NAME);
+        assertTrue(blocked.mkdir());
+        File inside = new File(blocked, "file");
+        assertTrue(inside.createNewFile());
+
+        PrintStream err = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(printed));
+        SaveCatalog catalog;
+        try {
+            catalog = new SaveCatalog(directory);
+        } finally {
+            System.setErr(err);
+        }
+        assertEquals("", printed.toString());
+        assertEquals(1, catalog.getEntries().size());
+        assertThrows(IOException.class, catalog::refresh);
+        assertThrows(IOException.class, () -> catalog.add(save, snapshot(30)));
+
+        assertTrue(inside.delete());
+        assertTrue(blocked.delete());
+        catalog.refresh();
+        assertTrue(blocked.isFile());
+        for (File file : directory.listFiles()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Test
+    public void testCompressedSaves() throws Exception {
+        File directory = Files.createTempDirectory("compressed").toFile();
+        directory.deleteOnExit();
+        SaveQueue queue = new SaveQueue(Runnable::run);
+        File plain = new File(directory, "save.json");
+        File gzip = new File(directory, "save.json" + Compression.GZIP_EXTENSION);
+        File deflate = new File(directory, "save.json" + Compression.DEFLATE_EXTENSION);
+        for (File file : List.of(plain, gzip, deflate)) {
+            file.deleteOnExit();
+            queue.submit(file, snapshot(25)).get();
+            Persistency persistency = new Persistency();
+            assertNotNull(persistency.loadBoard(file));
+            assertEquals(25, persistency.timeLeft);
+        }
+        assertTrue(gzip.length() * 5 < plain.length());
+        assertTrue(deflate.length() * 5 < plain.length());
+
+        // compressed files are recognised by their contents, not their names
+        File renamed = new File(directory, "renamed.json");
+        renamed.deleteOnExit();
+        Files.copy(gzip.toPath(), renamed.toPath());
+        Persistency persistency = new Persistency();
+        assertNotNull(persistency.loadBoard(renamed));
+        assertEquals(25, persistency.timeLeft);
+    }
+
+    @Test
+    public void testCompressionLevel() throws Exception {
+        File file = File.createTempFile("save", ".json" + Compression.GZIP_EXTENSION);
+        file.deleteOnExit();
+        SaveQueue queue = new SaveQueue(Runnable::run);
+        try {
+            Compression.setLevel(0);
+            queue.submit(file, snapshot(25)).get();
+            long stored = file.length();
+            Compression.setLevel(9);
+            queue.submit(file, snapshot(25)).get();
+            assertTrue(file.length() * 5 < stored);
+        } finally {
+            Compression.setLevel(-1);
+        }
+        assertThrows(IllegalArgumentException.class, () -> Compression.setLevel(10));
+    }
+
+    @Test
+    public void testTypeAdapters() {
+        Gson gson = JsonAdapters.GSON;
+        Tile door = gson.fromJson(gson.toJson(new Door(Key.Colour.GREEN, 3, 4), Tile.class), Tile.class);
+        assertTrue(door instanceof Door);
+        assertEquals(Key.Colour.GREEN, ((Door) door).getColour());
+        assertEquals(3, door.getX());
+        assertEquals(4, door.getY());
+        assertTrue(gson.fromJson(gson.toJson(new Treasure(1, 1), Tile.class), Tile.class) instanceof Treasure);
+
+        Item[][] inventory = {{Key.of(Key.Colour.RED), null}, {null, Key.of(Key.Colour.BLUE)}};
+        String json = gson.toJson(inventory, Item[][].class);
+        assertEquals("[[\"Key_Red\",\"none\"],[\"none\",\"Key_Blue\"]]", json);
+        assertArrayEquals(inventory, gson.fromJson(json, Item[][].class));
+
+        Move move = new Move("LEFT", 2.5);
+        assertEquals(move, gson.fromJson(gson.toJson(move), Move.class));
+        assertEquals(new Move("UP", Double.NaN), gson.fromJson("\"UP\"", Move.class));
+        assertEquals("\"UP\"", gson.toJson(new Move("UP", Double.NaN)));
+
+        AutoActor actor = gson.fromJson(gson.toJson(new AutoActor(5, 6, AutoActor.Direction.LEFT, 0, null)),
+                AutoActor.class);
+        assertEquals(5, actor.getX());
+        assertEquals(6, actor.getY());
+    }
+
     @Test
     public void testResumeGame() {
         Persistency persistency = new Persistency();
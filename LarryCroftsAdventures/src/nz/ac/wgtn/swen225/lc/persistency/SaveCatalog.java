@@ -0,0 +1,320 @@
+package nz.ac.wgtn.swen225.lc.persistency;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * An index of the saves in a directory, kept in a small file next to them, so
+ * that the saves can be listed and sorted without opening any of them. Each
+ * entry records the level, time left and treasure counts of a save along with
+ * the size and modification time of its file, and the modification time of
+ * its {@link SaveJournal} log if it has one. When the catalog is opened or
+ * refreshed, it is checked against the directory: saves added or changed
+ * outside the game are read once and added, and entries for deleted files are
+ * dropped. Files that are not saves are left out without complaint. If the
+ * index cannot be written, the error is thrown to whoever changed the catalog,
+ * and the index is written again on the next change or refresh.
+ * <p>
+ * Opening a catalog may read every save in the directory, so the shared
+ * catalog is only opened and refreshed on the {@link SaveQueue} thread, by
+ * {@link #loadShared()} and by the saves themselves.
+ */
+public class SaveCatalog {
+    /**
+     * The name of the index file in the saves directory.
+     */
+    public static final String INDEX_NAME = "catalog.idx";
+    /**
+     * The directory that the game saves into.
+     */
+    public static final File SAVES = new File("LarryCroftsAdventures" + File.separator + "Saves");
+
+    private static final int MAGIC = 0x4C434332; // "LCC2", an "LCC1" index has no log times and is rebuilt
+
+    private final File directory;
+    private final File index;
+    private final Map<String, Entry> entries = new TreeMap<>();
+    private boolean indexStale; // the index on disk is behind the entries
+
+    /**
+     * One save in the catalog.
+     *
+     * @param name                the name of the save file
+     * @param lastModified        the modification time of the file, in milliseconds
+     * @param length              the size of the file in bytes
+     * @param logModified         the modification time of the save's journal log,
+     *                            or 0 if it has none
+     * @param level               the level number
+     * @param timeLeft            the seconds left on the countdown
+     * @param playerTreasureCount the treasures the player has collected
+     * @param boardTreasureCount  the treasures left on the board
+     */
+    public record Entry(String name, long lastModified, long length, long logModified, int level, int timeLeft,
+                        int playerTreasureCount, int boardTreasureCount) {
+        /**
+         * Check whether this entry still matches a save file on disk.
+         *
+         * @param file the save file
+         * @return true if neither the file nor its journal log has changed
+         */
+        boolean matches(File file) {
+            return lastModified == file.lastModified() && length == file.length()
+                    && logModified == SaveJournal.logFor(file).lastModified();
+        }
+    }
+
+    private static final class Holder {
+        private static final SaveCatalog SHARED = new SaveCatalog(SAVES);
+    }
+
+    /**
+     * Open the catalog of a directory, bringing its index up to date. If the
+     * index cannot be written, the catalog is still usable, and the error is
+     * reported by the next {@link #refresh()} or {@link #add}.
+     *
+     * @param directory the saves directory
+     */
+    public SaveCatalog(File directory) {
+        this.directory = directory;
+        this.index = new File(directory, INDEX_NAME);
+        readIndex();
+        try {
+            refresh();
+        } catch (IOException e) {
+            // nobody to report to yet, and the index is stale until written
+        }
+    }
+
+    /**
+     * Get the catalog of the game's saves directory. The first call opens it,
+     * which can read every save, so this should not be called on the event
+     * dispatch thread; use {@link #loadShared()} there instead.
+     *
+     * @return the shared catalog
+     */
+    public static SaveCatalog getShared() {
+        return Holder.SHARED;
+    }
+
+    /**
+     * Open and refresh the catalog of the game's saves directory on the
+     * {@link SaveQueue} thread.
+     *
+     * @return a future that completes with the shared catalog once it is up to
+     * date, or completes exceptionally if its index could not be written, in
+     * which case the entries are still up to date
+     */
+    public static CompletableFuture<SaveCatalog> loadShared() {
+        return CompletableFuture.supplyAsync(() -> {
+            SaveCatalog catalog = getShared();
+            try {
+                catalog.refresh();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            return catalog;
+        }, SaveQueue.getShared().getExecutor());
+    }
+
+    /**
+     * Get every save in the catalog.
+     *
+     * @return the entries, sorted by file name
+     */
+    public synchronized List<Entry> getEntries() {
+        return List.copyOf(entries.values());
+    }
+
+    /**
+     * Get the file of a save in the catalog.
+     *
+     * @param entry the entry
+     * @return the save file
+     */
+    public File getFile(Entry entry) {
+        return new File(directory, entry.name());
+    }
+
+    /**
+     * Check the catalog against the directory. Saves whose size or modification
+     * time, or the modification time of whose journal log, differs from their
+     * entry are read again, new saves are read and
+     * added, and entries for missing files are removed. The index is written
+     * if anything changed.
+     *
+     * @throws IOException if the index cannot be written, though the entries
+     *                     are still up to date
+     */
+    public synchronized void refresh() throws IOException {
+        File[] files = directory.listFiles(SaveCatalog::isSave);
+        Map<String, Entry> current = new TreeMap<>();
+        if (files != null) {
+            for (File file : files) {
+                Entry entry = entries.get(file.getName());
+                if (entry == null || !entry.matches(file)) {
+                    entry = read(file);
+                }
+                if (entry != null) {
+                    current.put(entry.name(), entry);
+                }
+            }
+        }
+        if (!current.equals(entries)) {
+            entries.clear();
+            entries.putAll(current);
+            indexStale = true;
+        }
+        if (indexStale) {
+            writeIndex();
+        }
+    }
+
+    /**
+     * Add or update the entry for a save that the game has just written,
+     * without reading it back.
+     *
+     * @param file     the save file
+     * @param snapshot the state that was saved
+     * @throws IOException if the index cannot be written, though the entry is
+     *                     still added
+     */
+    public synchronized void add(File file, SaveSnapshot snapshot) throws IOException {
+        entries.put(file.getName(), new Entry(file.getName(), file.lastModified(), file.length(),
+                SaveJournal.logFor(file).lastModified(), snapshot.level(), snapshot.timeLeft(),
+                snapshot.playerTreasureCount(), snapshot.boardTreasureCount()));
+        indexStale = true;
+        writeIndex();
+    }
+
+    /**
+     * Get the lowest number above every save numbered with the given prefix,
+     * such as 4 when "saved-game-3.json" or "saved-game-3.json.gz" is the
+     * newest.
+     *
+     * @param prefix the start of the save file names
+     * @return the next free number
+     */
+    public synchronized int nextNumber(String prefix) {
+        return nextNumber(entries.keySet(), prefix);
+    }
+
+    /**
+     * Get the lowest number above every save in a directory numbered with the
+     * given prefix, going by the file names alone. No save is opened, so this
+     * can be used on the event dispatch thread.
+     *
+     * @param directory the saves directory
+     * @param prefix    the start of the save file names
+     * @return the next free number
+     */
+    public static int nextNumber(File directory, String prefix) {
+        String[] names = directory.list();
+        return nextNumber(names == null ? List.of() : Arrays.asList(names), prefix);
+    }
+
+    private static int nextNumber(Iterable<String> names, String prefix) {
+        int highest = 0;
+        for (String name : names) {
+            int dot = name.indexOf('.', prefix.length());
+            if (name.startsWith(prefix) && dot > prefix.length()) {
+                try {
+                    highest = Math.max(highest, Integer.parseInt(name.substring(prefix.length(), dot)));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return highest + 1;
+    }
+
+    private static boolean isSave(File file) {
+        String name = Compression.stripExtension(file.getName());
+        return file.isFile() && (name.endsWith(".json") || name.endsWith(BinaryLevel.EXTENSION));
+    }
+
+    /**
+     * Read the catalog fields of a save, or null if it is not a save.
+     */
+    private static Entry read(File file) {
+        Persistency persistency = new Persistency();
+        try {
+            if (persistency.readCells(file) == null) {
+                return null;
+            }
+        } catch (IOException e) {
+            // not a save, or gone since the directory was listed
+            return null;
+        }
+        return new Entry(file.getName(), file.lastModified(), file.length(), SaveJournal.logFor(file).lastModified(),
+                persistency.level, persistency.timeLeft, persistency.playerTreasureCount,
+                persistency.boardTreasureCount);
+    }
+
+    private void readIndex() {
+        if (!index.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readInt(),
+                        in.readInt(), in.readInt(), in.readInt());
+                entries.put(entry.name(), entry);
+            }
+        } catch (IOException e) {
+            // a damaged index is rebuilt from the saves themselves
+            entries.clear();
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        Files.createDirectories(directory.toPath());
+        Path temp = Files.createTempFile(directory.toPath(), INDEX_NAME, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp.toFile())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(entries.size());
+                for (Entry entry : entries.values()) {
+                    out.writeUTF(entry.name());
+                    out.writeLong(entry.lastModified());
+                    out.writeLong(entry.length());
+                    out.writeLong(entry.logModified());
+                    out.writeInt(entry.level());
+                    out.writeInt(entry.timeLeft());
+                    out.writeInt(entry.playerTreasureCount());
+                    out.writeInt(entry.boardTreasureCount());
+                }
+            }
+            try {
+                Files.move(temp, index.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        indexStale = false;
+    }
+}
@@ -0,0 +1,452 @@
+package nz.ac.wgtn.swen225.lc.persistency;
+
+import nz.ac.wgtn.swen225.lc.domain.Board;
+import nz.ac.wgtn.swen225.lc.domain.Chap;
+import nz.ac.wgtn.swen225.lc.domain.GameEngine;
+import nz.ac.wgtn.swen225.lc.domain.Inventory;
+import nz.ac.wgtn.swen225.lc.domain.MoveResult;
+import nz.ac.wgtn.swen225.lc.domain.items.Item;
+import nz.ac.wgtn.swen225.lc.domain.items.Key;
+import nz.ac.wgtn.swen225.lc.domain.tiles.Tile;
+import nz.ac.wgtn.swen225.lc.domain.tiles.TileKind;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Saves a running game as a base save file plus an append-only log of what has
+ * changed since, so that frequent saves cost a few bytes each instead of a
+ * full board. The log sits next to the base with {@link #LOG_EXTENSION} added
+ * to its name, and holds position deltas, changed cells, key counts, treasure
+ * counts and the time left. Records are buffered in memory as the game is
+ * played, and written with an fsync in batches on a background thread, so no
+ * disk I/O happens on the game thread. Once the log grows past a threshold,
+ * the cells of the board are copied on the game thread and written in the
+ * background as a new base, and the log starts again. A write that fails is
+ * reported by the future of {@link #write()} and by the next {@link #flush()}
+ * or {@link #close()}, never to the game itself.
+ * <p>
+ * The log starts with a checksum of the base it belongs to, so a log left over
+ * from an earlier base, after a crash part way through compaction, is ignored.
+ * {@link Persistency#loadBoard(File)} replays the log whenever it loads a
+ * base that has one. A journal listens to a {@link GameEngine}, so it is
+ * attached with {@link GameEngine#addListener}.
+ */
+public class SaveJournal implements GameEngine.Listener, AutoCloseable {
+    /**
+     * Added to the name of a base save to give the name of its log.
+     */
+    public static final String LOG_EXTENSION = ".log";
+    /**
+     * The default number of records written in each batch.
+     */
+    public static final int BATCH_RECORDS = 32;
+    /**
+     * The default log size in bytes after which a new base is written.
+     */
+    public static final long COMPACT_BYTES = 64 * 1024;
+
+    private static final int MAGIC = 0x4C434A31; // "LCJ1"
+    private static final int MOVE = 1;
+    private static final int CELL = 2;
+    private static final int KEYS = 3;
+    private static final int TREASURE = 4;
+    private static final int TIME = 5;
+    private static final Key.Colour[] COLOURS = Key.Colour.values();
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES;
+    private static final Executor WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "save-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File base;
+    private final GameEngine engine;
+    private final Board board;
+    private final Chap chap;
+    private final int batchRecords;
+    private final long compactBytes;
+    private final FileChannel log;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(pending);
+    private int pendingRecords;
+    private int x;
+    private int y;
+    private final int[] keys = new int[COLOURS.length];
+    private int treasures;
+    private long logBytes; // the size the log will be once the writes queued so far are done
+    private CompletableFuture<File> lastWrite = CompletableFuture.completedFuture(null);
+    private volatile IOException failure;
+
+    /**
+     * A write to disk, run on the background thread.
+     */
+    private interface Write {
+        void run() throws IOException;
+    }
+
+    /**
+     * Start a journal with the default batch size and compaction threshold.
+     *
+     * @param base   the base save file
+     * @param engine the running game
+     * @throws IOException if the log cannot be opened
+     */
+    public SaveJournal(File base, GameEngine engine) throws IOException {
+        this(base, engine, BATCH_RECORDS, COMPACT_BYTES);
+    }
+
+    /**
+     * Start a journal, queueing the current state of the game to be written
+     * as its base.
+     *
+     * @param base         the base save file
+     * @param engine       the running game
+     * @param batchRecords the number of records written in each batch
+     * @param compactBytes the log size in bytes after which a new base is written
+     * @throws IOException if the log cannot be opened
+     */
+    public SaveJournal(File base, GameEngine engine, int batchRecords, long compactBytes) throws IOException {
+        this.base = base.getAbsoluteFile();
+        this.engine = engine;
+        this.board = engine.getBoard();
+        this.chap = board.getChap();
+        this.batchRecords = batchRecords;
+        this.compactBytes = compactBytes;
+        Files.createDirectories(this.base.toPath().getParent());
+        this.log = FileChannel.open(logFor(this.base).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        startBase();
+    }
+
+    /**
+     * Get the log file of a base save.
+     *
+     * @param base the base save file
+     * @return the log file, which may not exist
+     */
+    public static File logFor(File base) {
+        return new File(base.getPath() + LOG_EXTENSION);
+    }
+
+    @Override
+    public void moved(Chap.Direction direction, MoveResult result, Tile entered) {
+        if (!result.moved()) {
+            return;
+        }
+        try {
+            if (chap.getX() != x || chap.getY() != y) {
+                out.writeByte(MOVE);
+                out.writeByte(chap.getX() - x);
+                out.writeByte(chap.getY() - y);
+                x = chap.getX();
+                y = chap.getY();
+                pendingRecords++;
+            }
+            TileKind now = board.getKind(x, y);
+            if (now != TileKind.of(entered)) {
+                out.writeByte(CELL);
+                out.writeShort(x);
+                out.writeShort(y);
+                out.writeByte(now.code());
+                pendingRecords++;
+            }
+            if (keysChanged()) {
+                out.writeByte(KEYS);
+                for (int key : keys) {
+                    out.writeByte(key);
+                }
+                pendingRecords++;
+            }
+            if (chap.getPlayerTreasureCount() != treasures) {
+                treasures = chap.getPlayerTreasureCount();
+                out.writeByte(TREASURE);
+                out.writeShort(treasures);
+                pendingRecords++;
+            }
+            if (pendingRecords >= batchRecords) {
+                write();
+            }
+        } catch (IOException e) {
+            // writing to memory does not fail
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void timeChanged(int timeLeft) {
+        try {
+            out.writeByte(TIME);
+            out.writeShort(timeLeft);
+            pendingRecords++;
+            if (pendingRecords >= batchRecords) {
+                write();
+            }
+        } catch (IOException e) {
+            // writing to memory does not fail
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void stateChanged(Chap.State state) {
+        write();
+    }
+
+    /**
+     * Compare the player's keys with the last ones logged, updating them.
+     */
+    private boolean keysChanged() {
+        boolean changed = false;
+        for (Key.Colour colour : COLOURS) {
+            int count = chap.getKeyCount(colour);
+            if (keys[colour.ordinal()] != count) {
+                keys[colour.ordinal()] = count;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Queue the buffered records to be written to the log and synced, and
+     * start a new base if the log has grown past the threshold. This does no
+     * disk I/O itself, so it is safe to call on the game thread.
+     *
+     * @return a future that completes with the base file once the records are
+     * on disk, or completes exceptionally if they could not be written
+     */
+    public CompletableFuture<File> write() {
+        if (pendingRecords > 0) {
+            byte[] records = pending.toByteArray();
+            pending.reset();
+            pendingRecords = 0;
+            logBytes += records.length;
+            submit(() -> {
+                ByteBuffer buffer = ByteBuffer.wrap(records);
+                while (buffer.hasRemaining()) {
+                    log.write(buffer);
+                }
+                log.force(false);
+            });
+        }
+        if (logBytes > compactBytes) {
+            startBase();
+        }
+        return lastWrite;
+    }
+
+    /**
+     * Write the buffered records to the log and wait for every queued write
+     * to finish.
+     *
+     * @throws IOException if the log or a base could not be written
+     */
+    public void flush() throws IOException {
+        write();
+        await();
+    }
+
+    /**
+     * Write the current state of the game as a new base, start an empty log
+     * for it, and wait for it to be written. Any buffered records are
+     * dropped, since the base includes them.
+     *
+     * @throws IOException if the base or the log cannot be written
+     */
+    public void compact() throws IOException {
+        startBase();
+        await();
+    }
+
+    /**
+     * Snapshot the game as a new base and queue it to be written along with an
+     * empty log. The snapshot is taken here, so later records follow on from it.
+     */
+    private void startBase() {
+        SaveSnapshot snapshot = SaveSnapshot.ofCells(List.of(), chap.getX(), chap.getY(),
+                chap.getPlayerTreasureCount(), board.getBoardTreasureCount(), board.getLevel(), engine.getTimeLeft(),
+                board.copyCells(), board.getWidth(), board.getHeight(), chap.getInventory())
+                .withCompactBoard(true);
+        pending.reset();
+        pendingRecords = 0;
+        x = chap.getX();
+        y = chap.getY();
+        keysChanged();
+        treasures = chap.getPlayerTreasureCount();
+        logBytes = HEADER_BYTES;
+        submit(() -> {
+            SaveQueue.writeAtomically(base, snapshot);
+            log.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putLong(checksum(base)).flip();
+            log.write(header, 0);
+            log.position(HEADER_BYTES);
+            log.force(false);
+        });
+    }
+
+    private void submit(Write write) {
+        CompletableFuture<File> done = new CompletableFuture<>();
+        WRITER.execute(() -> {
+            try {
+                write.run();
+                done.complete(base);
+            } catch (IOException e) {
+                failure = e;
+                done.completeExceptionally(e);
+            } catch (RuntimeException e) {
+                failure = new IOException(e);
+                done.completeExceptionally(e);
+            }
+        });
+        lastWrite = done;
+    }
+
+    /**
+     * Wait for the writes queued so far, which run in order.
+     *
+     * @throws IOException if any write so far has failed
+     */
+    private void await() throws IOException {
+        try {
+            lastWrite.join();
+        } catch (CompletionException e) {
+            // reported below
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Get the size of the log in bytes, including its header, once the writes
+     * queued so far are done.
+     *
+     * @return the size of the log
+     * @throws IOException if the size cannot be read or a write has failed
+     */
+    public long getLogSize() throws IOException {
+        await();
+        return log.size();
+    }
+
+    /**
+     * Write any buffered records and close the log, waiting for the writes.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            log.close();
+        }
+    }
+
+    /**
+     * Write any buffered records and close the log in the background, such as
+     * when the game moves on to another level.
+     *
+     * @return a future that completes once the log is closed
+     */
+    public CompletableFuture<File> closeLater() {
+        write();
+        submit(log::close);
+        return lastWrite;
+    }
+
+    /**
+     * Apply the log of a base save, if it has one that belongs to it, to the
+     * state loaded from the base. A record cut short by a crash ends the replay.
+     *
+     * @param base        the base save file
+     * @param persistency the state loaded from the base, which is updated
+     * @param cells       the cells loaded from the base, which are updated
+     * @throws IOException if the log cannot be read
+     */
+    static void replay(File base, Persistency persistency, byte[] cells) throws IOException {
+        File logFile = logFor(base);
+        if (!logFile.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            if (in.readInt() != MAGIC || in.readLong() != checksum(base)) {
+                return;
+            }
+            while (true) {
+                int type = in.read();
+                switch (type) {
+                    case -1 -> {
+                        return;
+                    }
+                    case MOVE -> {
+                        int dx = in.readByte();
+                        int dy = in.readByte();
+                        persistency.playerX += dx;
+                        persistency.playerY += dy;
+                    }
+                    case CELL -> {
+                        int cellX = in.readUnsignedShort();
+                        int cellY = in.readUnsignedShort();
+                        cells[cellY * persistency.width + cellX] = in.readByte();
+                    }
+                    case KEYS -> {
+                        byte[] counts = new byte[COLOURS.length];
+                        in.readFully(counts);
+                        persistency.invent = keyGrid(counts);
+                    }
+                    case TREASURE -> persistency.playerTreasureCount = in.readUnsignedShort();
+                    case TIME -> persistency.timeLeft = in.readUnsignedShort();
+                    default -> throw new IOException("Unknown record " + type + " in " + logFile);
+                }
+            }
+        } catch (EOFException e) {
+            // the last batch was cut short, so everything before it stands
+        }
+    }
+
+    /**
+     * Lay out keys in an inventory grid in colour order, the same way as the
+     * inventory itself.
+     */
+    private static Item[][] keyGrid(byte[] counts) {
+        Item[][] grid = new Item[Inventory.ROWS][Inventory.COLUMNS];
+        int slot = 0;
+        for (Key.Colour colour : COLOURS) {
+            for (int i = 0; i < counts[colour.ordinal()] && slot < Inventory.CAPACITY; i++, slot++) {
+                grid[slot / Inventory.COLUMNS][slot % Inventory.COLUMNS] = Key.of(colour);
+            }
+        }
+        return grid;
+    }
+
+    private static long checksum(File file) throws IOException {
+        try (CheckedInputStream in = new CheckedInputStream(new FileInputStream(file), new CRC32())) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) >= 0) {
+                // read through to update the checksum
+            }
+            return in.getChecksum().getValue();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package nz.ac.wgtn.swen225.lc.persistency;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes saves on a background thread, so the game does not stall while a
+ * file is written. Each save goes to a temporary file in the same directory,
+ * which is synced and then renamed over the target, so a crash part way
+ * through never leaves a truncated save behind. If a save to a file is still
+ * waiting when another save to the same file is asked for, only the newer
+ * snapshot is written and both callers are told when it is done.
+ * <p>
+ * Only saves to the same file are merged, which is what happens to the
+ * autosave, whose checkpoints all go to one file. Saves from the menu are
+ * each numbered as a new file, so every one of them is written.
+ */
+public final class SaveQueue {
+    private static final SaveQueue SHARED = new SaveQueue(Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "game-saver");
+        thread.setDaemon(true);
+        return thread;
+    }));
+
+    private final Executor executor;
+    private final Map<File, Pending> queued = new HashMap<>();
+
+    private record Pending(SaveSnapshot snapshot, CompletableFuture<File> future) {
+    }
+
+    /**
+     * Create a queue that writes saves on the given executor.
+     *
+     * @param executor the executor, which should run one save at a time
+     */
+    SaveQueue(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Get the queue shared by the whole game.
+     *
+     * @return the shared queue
+     */
+    public static SaveQueue getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Get the executor that saves are written on, for other work on saves
+     * that should run in order with them and off the game thread.
+     *
+     * @return the executor
+     */
+    Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Queue a snapshot to be written to a file.
+     *
+     * @param target   the save file
+     * @param snapshot the state to save
+     * @return a future that completes with the file once it is written
+     */
+    public CompletableFuture<File> submit(File target, SaveSnapshot snapshot) {
+        File key = target.getAbsoluteFile();
+        CompletableFuture<File> future = new CompletableFuture<>();
+        synchronized (queued) {
+            Pending replaced = queued.put(key, new Pending(snapshot, future));
+            if (replaced != null) {
+                // the write already queued for this file picks up the newer snapshot
+                future.whenComplete((file, error) -> {
+                    if (error == null) {
+                        replaced.future().complete(file);
+                    } else {
+                        replaced.future().completeExceptionally(error);
+                    }
+                });
+                return future;
+            }
+        }
+        executor.execute(() -> write(key));
+        return future;
+    }
+
+    private void write(File target) {
+        Pending pending;
+        synchronized (queued) {
+            pending = queued.remove(target);
+        }
+        try {
+            writeAtomically(target, pending.snapshot());
+            pending.future().complete(target);
+        } catch (IOException | RuntimeException e) {
+            pending.future().completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Write a snapshot to a temporary file and rename it over the target. The
+     * file is compressed if the name of the target asks for it.
+     *
+     * @param target   the save file
+     * @param snapshot the state to save
+     * @throws IOException if the file cannot be written
+     */
+    static void writeAtomically(File target, SaveSnapshot snapshot) throws IOException {
+        Path directory = target.toPath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, target.getName(), ".tmp");
+        try {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    Compression.wrap(new FileOutputStream(temp.toFile()), target), StandardCharsets.UTF_8))) {
+                Persistency.writeSave(writer, snapshot);
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package nz.ac.wgtn.swen225.lc.persistency;
+
+import nz.ac.wgtn.swen225.lc.app.Move;
+import nz.ac.wgtn.swen225.lc.domain.items.Item;
+import nz.ac.wgtn.swen225.lc.domain.tiles.Tile;
+import nz.ac.wgtn.swen225.lc.domain.tiles.TileKind;
+
+import java.util.List;
+
+/**
+ * The state of a game at the moment a save was asked for. The board is copied
+ * into one {@link TileKind} code per cell when the snapshot is made, so the
+ * game can carry on while the snapshot is written on another thread.
+ *
+ * @param actions             the recorded moves
+ * @param playerX             the x position of the player
+ * @param playerY             the y position of the player
+ * @param playerTreasureCount the treasures the player has collected
+ * @param boardTreasureCount  the treasures left on the board
+ * @param level               the level number
+ * @param timeLeft            the seconds left on the countdown
+ * @param cells               the cell codes in row-major order
+ * @param width               the number of columns
+ * @param height              the number of rows
+ * @param inventory           the inventory grid
+ * @param compactBoard        whether to write the board as run-length encoded rows
+ */
+public record SaveSnapshot(List<Move> actions, int playerX, int playerY, int playerTreasureCount,
+                           int boardTreasureCount, int level, int timeLeft, byte[] cells, int width, int height,
+                           Item[][] inventory, boolean compactBoard) {
+
+    /**
+     * Make a snapshot, copying the given collections. The board is indexed by x
+     * then y, as returned by {@code Board.getTiles()}, and may be any size.
+     */
+    public static SaveSnapshot of(List<Move> actions, int playerX, int playerY, int playerTreasureCount,
+                                  int boardTreasureCount, int level, int timeLeft, Tile[][] board, Item[][] inventory) {
+        int width = board.length;
+        int height = width == 0 ? 0 : board[0].length;
+        byte[] cells = new byte[width * height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                cells[y * width + x] = TileKind.of(board[x][y]).code();
+            }
+        }
+        Item[][] inventoryCopy = new Item[inventory.length][];
+        for (int row = 0; row < inventory.length; row++) {
+            inventoryCopy[row] = inventory[row].clone();
+        }
+        return new SaveSnapshot(actions == null ? List.of() : List.copyOf(actions), playerX, playerY,
+                playerTreasureCount, boardTreasureCount, level, timeLeft, cells, width, height, inventoryCopy, false);
+    }
+
+    /**
+     * Make a snapshot of cells that have already been copied, such as those
+     * from {@code Board.copyCells()}. The cells are kept as they are.
+     */
+    public static SaveSnapshot ofCells(List<Move> actions, int playerX, int playerY, int playerTreasureCount,
+                                       int boardTreasureCount, int level, int timeLeft, byte[] cells, int width,
+                                       int height, Item[][] inventory) {
+        Item[][] inventoryCopy = new Item[inventory.length][];
+        for (int row = 0; row < inventory.length; row++) {
+            inventoryCopy[row] = inventory[row].clone();
+        }
+        return new SaveSnapshot(actions == null ? List.of() : List.copyOf(actions), playerX, playerY,
+                playerTreasureCount, boardTreasureCount, level, timeLeft, cells, width, height, inventoryCopy, false);
+    }
+
+    /**
+     * Get a copy of this snapshot that writes its board in the given form.
+     *
+     * @param compactBoard whether to write the board as run-length encoded rows
+     * @return the snapshot
+     */
+    public SaveSnapshot withCompactBoard(boolean compactBoard) {
+        return new SaveSnapshot(actions, playerX, playerY, playerTreasureCount, boardTreasureCount, level, timeLeft,
+                cells, width, height, inventory, compactBoard);
+    }
+}
@@ -0,0 +1,310 @@
+package nz.ac.wgtn.swen225.lc.recorder;
+
+import nz.ac.wgtn.swen225.lc.domain.Chap;
+import nz.ac.wgtn.swen225.lc.domain.GameEngine;
+import nz.ac.wgtn.swen225.lc.domain.items.Key;
+import nz.ac.wgtn.swen225.lc.persistency.Compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Replays every recording in a directory without a user interface and checks
+ * the state each one ends in against a manifest of expected checksums, so a
+ * set of recordings can be kept as regression fixtures. Recordings are
+ * replayed in parallel on a board of their own with
+ * {@link Recorder#fastForward(File)}. The starting states are parsed through
+ * the shared level cache.
+ * <p>
+ * The manifest is a text file with one line per recording, holding the
+ * checksum and then the file name, and is written with {@code --update}.
+ * <pre>
+ * BatchVerifier &lt;directory&gt; [--manifest file] [--threads n] [--update]
+ * </pre>
+ * The exit status is 0 if every recording matched, 1 if any did not, and 2 if
+ * the arguments or the manifest could not be used.
+ */
+public class BatchVerifier {
+    /**
+     * The name of the manifest in the directory, when no other is given.
+     */
+    public static final String MANIFEST = "manifest.txt";
+
+    /**
+     * How one recording was replayed.
+     *
+     * @param name     the file name of the recording
+     * @param checksum the checksum of the state it ended in, or null if it failed
+     * @param moves    the number of moves replayed
+     * @param error    why the recording could not be replayed, or null
+     */
+    public record Result(String name, String checksum, int moves, String error) {
+    }
+
+    /**
+     * Find the recordings in a directory: every move log, and every save that
+     * has no move log next to it, which holds its moves itself.
+     *
+     * @param directory the directory to look in
+     * @return the recordings, sorted by name
+     * @throws IOException if the directory cannot be listed
+     */
+    public static List<File> findRecordings(File directory) throws IOException {
+        File[] files = directory.listFiles(File::isFile);
+        if (files == null) {
+            throw new IOException("Not a directory: " + directory);
+        }
+        List<File> recordings = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(MoveLog.EXTENSION)
+                    || Compression.stripExtension(name).endsWith(".json") && !MoveLog.logFor(file).isFile()) {
+                recordings.add(file);
+            }
+        }
+        recordings.sort(null);
+        return recordings;
+    }
+
+    /**
+     * Replay recordings in parallel.
+     *
+     * @param recordings the recordings to replay
+     * @param threads    the number of recordings to replay at once
+     * @return the result of each recording, in the same order
+     */
+    public static List<Result> replay(List<File> recordings, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-verifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<CompletableFuture<Result>> results = new ArrayList<>();
+            for (File recording : recordings) {
+                results.add(CompletableFuture.supplyAsync(() -> replay(recording), pool));
+            }
+            return results.stream().map(CompletableFuture::join).toList();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Replay one recording to the end.
+     *
+     * @param recording a save or a move log
+     * @return how it was replayed
+     */
+    public static Result replay(File recording) {
+        try {
+            GameEngine engine = new GameEngine(Recorder.stateOf(recording));
+            int moves;
+            try (ReplaySource source = Recorder.openMoves(recording)) {
+                moves = Recorder.fastForward(engine, source);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return new Result(recording.getName(), checksum(engine), moves, null);
+        } catch (IOException | RuntimeException e) {
+            return new Result(recording.getName(), null, 0, e.toString());
+        }
+    }
+
+    /**
+     * Get a checksum of the state of a game: the tiles of the board, and the
+     * position, treasure count, state and keys of the player.
+     *
+     * @param engine the game
+     * @return the checksum as 16 hex digits
+     */
+    public static String checksum(GameEngine engine) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            Chap chap = engine.getChap();
+            data.writeInt(engine.getBoard().getWidth());
+            data.writeInt(engine.getBoard().getHeight());
+            data.write(engine.getBoard().copyCells());
+            data.writeInt(chap.getX());
+            data.writeInt(chap.getY());
+            data.writeInt(chap.getPlayerTreasureCount());
+            data.writeUTF(chap.getState().name());
+            for (Key.Colour colour : Key.Colour.values()) {
+                data.writeInt(chap.getKeyCount(colour));
+            }
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray());
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            // neither can happen: the bytes are in memory and every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Read a manifest.
+     *
+     * @param manifest the manifest file
+     * @return the expected checksum of each recording, by file name
+     * @throws IOException if the manifest cannot be read or a line is malformed
+     */
+    public static Map<String, String> readManifest(File manifest) throws IOException {
+        Map<String, String> expected = new TreeMap<>();
+        for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.strip().split("\\s+", 2);
+            if (parts.length != 2) {
+                throw new IOException("Malformed manifest line: " + line);
+            }
+            expected.put(parts[1], parts[0]);
+        }
+        return expected;
+    }
+
+    /**
+     * Write a manifest of the recordings that replayed, replacing the old one
+     * all at once.
+     *
+     * @param manifest the manifest file
+     * @param results  the results to record
+     * @throws IOException if the manifest cannot be written
+     */
+    public static void writeManifest(File manifest, List<Result> results) throws IOException {
+        StringBuilder out = new StringBuilder();
+        for (Result result : results) {
+            if (result.checksum() != null) {
+                out.append(result.checksum()).append(' ').append(result.name()).append('\n');
+            }
+        }
+        Path temp = Files.createTempFile(manifest.getAbsoluteFile().toPath().getParent(), manifest.getName(), ".tmp");
+        try {
+            Files.writeString(temp, out, StandardCharsets.UTF_8);
+            Files.move(temp, manifest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Compare results with a manifest and report the differences and the
+     * throughput.
+     *
+     * @param results  the results of the replay
+     * @param expected the expected checksums, by file name
+     * @param nanos    how long the replay took
+     * @param out      where to report
+     * @return the number of recordings that failed, did not match or were missing
+     */
+    public static int report(List<Result> results, Map<String, String> expected, long nanos, PrintStream out) {
+        Map<String, String> missing = new TreeMap<>(expected);
+        int problems = 0;
+        long moves = 0;
+        for (Result result : results) {
+            moves += result.moves();
+            String checksum = missing.remove(result.name());
+            if (result.error() != null) {
+                out.println("FAILED   " + result.name() + ": " + result.error());
+                problems++;
+            } else if (checksum == null) {
+                out.println("NEW      " + result.name() + " " + result.checksum());
+            } else if (!checksum.equals(result.checksum())) {
+                out.println("MISMATCH " + result.name() + ": expected " + checksum + ", got " + result.checksum());
+                problems++;
+            }
+        }
+        for (String name : missing.keySet()) {
+            out.println("MISSING  " + name);
+            problems++;
+        }
+        double seconds = Math.max(nanos, 1) / 1e9;
+        out.printf("%d recordings, %d moves in %.2f s: %.0f recordings/min, %.0f moves/s%n",
+                results.size(), moves, seconds, results.size() / seconds * 60, moves / seconds);
+        out.println(problems == 0 ? "All recordings match" : problems + " recordings do not match");
+        return problems;
+    }
+
+    /**
+     * Verify the recordings in a directory from the command line.
+     *
+     * @param args the directory, then the options
+     */
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Verify the recordings in a directory.
+     *
+     * @param args the directory, then the options
+     * @param out  where to report
+     * @param err  where to report usage and errors
+     * @return the exit status
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        File directory = null;
+        File manifest = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean update = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--manifest" -> manifest = new File(args[++i]);
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    case "--update" -> update = true;
+                    default -> {
+                        if (directory != null || args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown argument: " + args[i]);
+                        }
+                        directory = new File(args[i]);
+                    }
+                }
+            }
+            if (directory == null || threads < 1) {
+                throw new IllegalArgumentException("No directory given");
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            err.println("Usage: BatchVerifier <directory> [--manifest file] [--threads n] [--update]");
+            return 2;
+        }
+        if (manifest == null) {
+            manifest = new File(directory, MANIFEST);
+        }
+
+        try {
+            List<File> recordings = findRecordings(directory);
+            Map<String, String> expected = update || !manifest.isFile() ? Map.of() : readManifest(manifest);
+            long start = System.nanoTime();
+            List<Result> results = replay(recordings, threads);
+            int problems = report(results, expected, System.nanoTime() - start, out);
+            if (update) {
+                writeManifest(manifest, results);
+                out.println("Wrote " + manifest);
+                return results.stream().anyMatch(result -> result.error() != null) ? 1 : 0;
+            }
+            return problems == 0 ? 0 : 1;
+        } catch (IOException e) {
+            err.println(e.getMessage());
+            return 2;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package nz.ac.wgtn.swen225.lc.recorder;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import nz.ac.wgtn.swen225.lc.app.Move;
+import nz.ac.wgtn.swen225.lc.persistency.Compression;
+import nz.ac.wgtn.swen225.lc.persistency.JsonAdapters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the actions of a JSON save as they are asked for. Opening the save
+ * streams past the keys before the actions array without building them, and
+ * the reader is left inside the array, so the rest of the save is never read.
+ */
+class JsonReplaySource implements ReplaySource {
+    private final JsonReader reader;
+    private boolean inActions;
+    private int position;
+
+    /**
+     * Open a save and find its actions.
+     *
+     * @param file the save, which may be gzip or deflate compressed
+     * @throws IOException if the save cannot be read
+     */
+    JsonReplaySource(File file) throws IOException {
+        reader = new JsonReader(new InputStreamReader(Compression.open(file), StandardCharsets.UTF_8));
+        try {
+            reader.setLenient(true);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("actions") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    inActions = true;
+                    return;
+                }
+                reader.skipValue();
+            }
+            reader.close();
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!inActions) {
+            return false;
+        }
+        try {
+            if (reader.hasNext()) {
+                return true;
+            }
+            close();
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Move next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            Move move = JsonAdapters.MOVES.read(reader);
+            position++;
+            return move;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int position() {
+        return position;
+    }
+
+    @Override
+    public int size() {
+        return -1;
+    }
+
+    @Override
+    public void close() {
+        inActions = false;
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package nz.ac.wgtn.swen225.lc.recorder;
+
+import nz.ac.wgtn.swen225.lc.domain.Board;
+import nz.ac.wgtn.swen225.lc.domain.Chap;
+import nz.ac.wgtn.swen225.lc.domain.Inventory;
+import nz.ac.wgtn.swen225.lc.domain.items.Item;
+import nz.ac.wgtn.swen225.lc.domain.items.Key;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The state of a recorded game after a number of moves, stored in a move log
+ * so a replay can jump to that move without replaying everything before it.
+ * The board is kept as the cells that differ from the starting state, so a
+ * keyframe costs a few bytes per opened door or collected item.
+ *
+ * @param move          the number of moves played before this keyframe
+ * @param offset        the byte offset in the log of the next move
+ * @param ticks         the game time of the last timed move before, in ticks
+ * @param x             the x position of the player
+ * @param y             the y position of the player
+ * @param treasureCount the number of treasures the player has collected
+ * @param state         the state of the player
+ * @param inventory     the items the player holds
+ * @param changed       the indices of the cells that differ from the start
+ * @param codes         the cell codes at those indices
+ */
+record Keyframe(int move, long offset, long ticks, int x, int y, int treasureCount, Chap.State state,
+                Item[][] inventory, int[] changed, byte[] codes) {
+    private static final Chap.State[] STATES = Chap.State.values();
+    private static final Key.Colour[] COLOURS = Key.Colour.values();
+
+    /**
+     * Take a keyframe of a board.
+     *
+     * @param move   the number of moves played so far
+     * @param offset the byte offset in the log of the next move
+     * @param ticks  the game time of the last timed move before, in ticks
+     * @param start  the cells of the board before the first move
+     * @param board  the board now
+     * @return the keyframe
+     */
+    static Keyframe capture(int move, long offset, long ticks, byte[] start, Board board) {
+        byte[] cells = board.copyCells();
+        int count = 0;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != start[i]) {
+                count++;
+            }
+        }
+        int[] changed = new int[count];
+        byte[] codes = new byte[count];
+        for (int i = 0, j = 0; j < count; i++) {
+            if (cells[i] != start[i]) {
+                changed[j] = i;
+                codes[j++] = cells[i];
+            }
+        }
+        Chap chap = board.getChap();
+        Item[][] inventory = new Item[Inventory.ROWS][];
+        for (int row = 0; row < Inventory.ROWS; row++) {
+            inventory[row] = chap.getInventory()[row].clone();
+        }
+        return new Keyframe(move, offset, ticks, chap.getX(), chap.getY(), chap.getPlayerTreasureCount(),
+                chap.getState(), inventory, changed, codes);
+    }
+
+    /**
+     * Put a board into the state of this keyframe.
+     *
+     * @param start the cells of the board before the first move
+     * @param board the board to change
+     */
+    void restore(byte[] start, Board board) {
+        byte[] cells = start.clone();
+        for (int i = 0; i < changed.length; i++) {
+            cells[changed[i]] = codes[i];
+        }
+        Item[][] items = new Item[inventory.length][];
+        for (int row = 0; row < inventory.length; row++) {
+            items[row] = inventory[row].clone();
+        }
+        board.restore(cells, x, y, treasureCount, state, items);
+    }
+
+    /**
+     * Write this keyframe to a move log.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    void write(DataOutputStream out) throws IOException {
+        MoveLog.writeVarint(out, move);
+        MoveLog.writeVarint(out, offset);
+        MoveLog.writeVarint(out, ticks);
+        MoveLog.writeVarint(out, x);
+        MoveLog.writeVarint(out, y);
+        MoveLog.writeVarint(out, treasureCount);
+        out.writeByte(state.ordinal());
+        for (Item[] row : inventory) {
+            for (Item item : row) {
+                out.writeByte(item instanceof Key key ? key.colour().ordinal() + 1 : 0);
+            }
+        }
+        MoveLog.writeVarint(out, changed.length);
+        int last = 0;
+        for (int i = 0; i < changed.length; i++) {
+            MoveLog.writeVarint(out, changed[i] - last);
+            out.writeByte(codes[i]);
+            last = changed[i];
+        }
+    }
+
+    /**
+     * Read a keyframe from a move log.
+     *
+     * @param in the stream to read from
+     * @return the keyframe
+     * @throws IOException if the stream cannot be read
+     */
+    static Keyframe read(DataInputStream in) throws IOException {
+        int move = (int) MoveLog.readVarint(in);
+        long offset = MoveLog.readVarint(in);
+        long ticks = MoveLog.readVarint(in);
+        int x = (int) MoveLog.readVarint(in);
+        int y = (int) MoveLog.readVarint(in);
+        int treasureCount = (int) MoveLog.readVarint(in);
+        Chap.State state = STATES[in.readUnsignedByte()];
+        Item[][] inventory = new Item[Inventory.ROWS][Inventory.COLUMNS];
+        for (Item[] row : inventory) {
+            for (int column = 0; column < row.length; column++) {
+                int code = in.readUnsignedByte();
+                row[column] = code == 0 ? null : Key.of(COLOURS[code - 1]);
+            }
+        }
+        int count = (int) MoveLog.readVarint(in);
+        int[] changed = new int[count];
+        byte[] codes = new byte[count];
+        int last = 0;
+        for (int i = 0; i < count; i++) {
+            last += (int) MoveLog.readVarint(in);
+            changed[i] = last;
+            codes[i] = in.readByte();
+        }
+        return new Keyframe(move, offset, ticks, x, y, treasureCount, state, inventory, changed, codes);
+    }
+}
@@ -0,0 +1,583 @@
+package nz.ac.wgtn.swen225.lc.recorder;
+
+import nz.ac.wgtn.swen225.lc.app.Move;
+import nz.ac.wgtn.swen225.lc.domain.Board;
+import nz.ac.wgtn.swen225.lc.domain.Chap;
+import nz.ac.wgtn.swen225.lc.domain.GameClock;
+import nz.ac.wgtn.swen225.lc.domain.GameEngine;
+import nz.ac.wgtn.swen225.lc.persistency.Compression;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact binary form for the moves of a recording. A recorded game is kept
+ * as a save of the state it started from plus a move log next to it, named
+ * after the save with {@link #EXTENSION} in place of its extension.
+ * <p>
+ * The log starts with a magic number, the file name of the save it belongs to
+ * and the number of moves. Each move is then a single varint holding the
+ * direction in its low two bits and the zigzag encoded change in game time
+ * since the previous move, in ticks, plus one, above them. Zero in place of
+ * the change marks a move with no recorded time, from a save made before moves
+ * were timed, which reads back with a time of NaN. Moves a fraction of a
+ * second apart take one byte each, against around forty as JSON. Logs written
+ * before untimed moves were marked have an older magic number and no plus
+ * one, and are still read.
+ * <p>
+ * When the log is written with the board it starts from, the moves are
+ * followed by a {@link Keyframe} of the game state every
+ * {@link #KEYFRAME_INTERVAL} moves, so a replay can jump to any move by
+ * restoring the keyframe before it and replaying the few moves in between.
+ * Logs without keyframes just end after the moves. Logs with keyframes are
+ * always written uncompressed, since a compressed stream can only be read from
+ * its start, which would make every seek read the whole log up to the
+ * keyframe. Compressed logs with keyframes written elsewhere can still be
+ * read, but seek in time proportional to the offset of the keyframe.
+ * <p>
+ * A recording in progress is streamed to a log with its own magic number and
+ * no move count, by a {@link RecordingSink}. Such a log is read up to its end,
+ * ignoring a move cut short by a crash, and is rewritten in the counted form
+ * with keyframes by {@link #finish(File, Board)} once the recording stops.
+ */
+public final class MoveLog {
+    /**
+     * The extension of a move log file.
+     */
+    public static final String EXTENSION = ".lcr";
+    /**
+     * The number of moves between keyframes.
+     */
+    public static final int KEYFRAME_INTERVAL = 500;
+
+    private static final int MAGIC = 0x4C434D32; // "LCM2"
+    private static final int STREAM_MAGIC = 0x4C435332; // "LCS2"
+    private static final int OLD_MAGIC = 0x4C434D31; // "LCM1", which has no untimed moves
+    private static final int OLD_STREAM_MAGIC = 0x4C435331; // "LCS1"
+    private static final Chap.Direction[] DIRECTIONS = Chap.Direction.values();
+
+    /**
+     * The moves of a recording and the save they start from.
+     *
+     * @param stateName the file name of the save holding the starting state
+     * @param moves     the recorded moves
+     */
+    public record Recording(String stateName, List<Move> moves) {
+    }
+
+    private MoveLog() {
+    }
+
+    /**
+     * Get the move log that belongs to a save.
+     *
+     * @param save the save holding the starting state
+     * @return the move log file next to it
+     */
+    public static File logFor(File save) {
+        String name = Compression.stripExtension(save.getName());
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return new File(save.getParentFile(), name + EXTENSION);
+    }
+
+    /**
+     * Check whether a file is a move log, going by its first bytes.
+     *
+     * @param file the file to check
+     * @return true if the file is a move log
+     */
+    public static boolean isMoveLog(File file) {
+        try (DataInputStream in = new DataInputStream(Compression.open(file))) {
+            return isMagic(in.readInt());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isMagic(int magic) {
+        return magic == MAGIC || magic == STREAM_MAGIC || magic == OLD_MAGIC || magic == OLD_STREAM_MAGIC;
+    }
+
+    /**
+     * Write a move log to a temporary file and rename it over the target. The
+     * log is compressed if the name of the target asks for it.
+     *
+     * @param file      the move log file
+     * @param stateName the file name of the save holding the starting state
+     * @param moves     the moves to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(File file, String stateName, List<Move> moves) throws IOException {
+        write(file, stateName, moves, null);
+    }
+
+    /**
+     * Write a move log with keyframes to a temporary file and rename it over
+     * the target. Without keyframes, the log is compressed if the name of the
+     * target asks for it; with them, it is never compressed, so it can seek.
+     *
+     * @param file      the move log file
+     * @param stateName the file name of the save holding the starting state
+     * @param moves     the moves to write
+     * @param start     a board in the starting state, which the moves are played
+     *                  on to take the keyframes, or null to write none
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(File file, String stateName, List<Move> moves, Board start) throws IOException {
+        writeAtomically(file, start == null, out -> write(out, stateName, moves, start));
+    }
+
+    /**
+     * Rewrite a log streamed by a {@link RecordingSink} in the counted form,
+     * with keyframes. Logs already in the counted form are rewritten as they are.
+     * A log rewritten with keyframes is uncompressed, as for {@link #write(File,
+     * String, List, Board)}.
+     *
+     * @param file  the move log file
+     * @param start a board in the starting state, which the moves are played on
+     *              to take the keyframes, or null to write none
+     * @throws IOException if the log cannot be read or written
+     */
+    public static void finish(File file, Board start) throws IOException {
+        String stateName;
+        int count = 0;
+        try (Cursor cursor = open(file)) {
+            stateName = cursor.getStateName();
+            for (; cursor.hasNext(); count++) {
+                cursor.next();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        int moves = count;
+        writeAtomically(file, start == null, out -> {
+            try (Cursor cursor = open(file)) {
+                write(out, stateName, moves, cursor, start);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    /**
+     * Writes the contents of a file to a stream.
+     */
+    private interface Body {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private static void writeAtomically(File file, boolean compress, Body body) throws IOException {
+        Path directory = file.getAbsoluteFile().toPath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getName(), ".tmp");
+        try {
+            OutputStream raw = new FileOutputStream(temp.toFile());
+            try (OutputStream out = compress ? Compression.wrap(raw, file) : raw) {
+                body.write(out);
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Write a move log to a stream.
+     *
+     * @param out       the stream to write to, which is flushed but not closed
+     * @param stateName the file name of the save holding the starting state
+     * @param moves     the moves to write
+     * @throws IOException if the stream cannot be written
+     */
+    public static void write(OutputStream out, String stateName, List<Move> moves) throws IOException {
+        write(out, stateName, moves, null);
+    }
+
+    /**
+     * Write a move log with keyframes to a stream.
+     *
+     * @param out       the stream to write to, which is flushed but not closed
+     * @param stateName the file name of the save holding the starting state
+     * @param moves     the moves to write
+     * @param start     a board in the starting state, which the moves are played
+     *                  on to take the keyframes, or null to write none
+     * @throws IOException if the stream cannot be written
+     */
+    public static void write(OutputStream out, String stateName, List<Move> moves, Board start)
+            throws IOException {
+        write(out, stateName, moves.size(), moves.iterator(), start);
+    }
+
+    private static void write(OutputStream out, String stateName, int count, Iterator<Move> moves, Board start)
+            throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeUTF(stateName);
+        writeVarint(data, count);
+        GameEngine engine = start == null ? null : new GameEngine(start);
+        byte[] startCells = start == null ? null : start.copyCells();
+        List<Keyframe> keyframes = new ArrayList<>();
+        long last = 0;
+        for (int played = 0; played < count; played++) {
+            Move move = moves.next();
+            if (engine != null && played % KEYFRAME_INTERVAL == 0) {
+                keyframes.add(Keyframe.capture(played, data.size(), last, startCells, start));
+            }
+            last = writeMove(data, move, last);
+            if (engine != null) {
+                engine.move(Chap.Direction.valueOf(move.move()));
+            }
+        }
+        if (engine != null) {
+            writeVarint(data, keyframes.size());
+            for (Keyframe keyframe : keyframes) {
+                keyframe.write(data);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Start a streamed log, whose moves follow until the end of the file.
+     *
+     * @param out       the stream to write to
+     * @param stateName the file name of the save holding the starting state
+     * @throws IOException if the stream cannot be written
+     */
+    static void writeStreamHeader(DataOutputStream out, String stateName) throws IOException {
+        out.writeInt(STREAM_MAGIC);
+        out.writeUTF(stateName);
+    }
+
+    /**
+     * Write one move.
+     *
+     * @param out  the stream to write to
+     * @param move the move
+     * @param last the game time of the last timed move before, in ticks
+     * @return the game time of the last timed move up to this one, in ticks
+     * @throws IOException if the stream cannot be written
+     */
+    static long writeMove(DataOutputStream out, Move move, long last) throws IOException {
+        int direction = Chap.Direction.valueOf(move.move()).ordinal();
+        if (Double.isNaN(move.time())) {
+            writeVarint(out, direction);
+            return last;
+        }
+        long ticks = ticksOf(move.time());
+        writeVarint(out, zigzag(ticks - last) + 1 << 2 | direction);
+        return ticks;
+    }
+
+    /**
+     * Read a move log, which may be gzip or deflate compressed.
+     *
+     * @param file the move log file
+     * @return the recording held in the log
+     * @throws IOException if the file cannot be read or is not a move log
+     */
+    public static Recording read(File file) throws IOException {
+        try (InputStream in = Compression.open(file)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Read a move log from a stream.
+     *
+     * @param in the stream to read from, which is not closed
+     * @return the recording held in the log
+     * @throws IOException if the stream cannot be read or is not a move log
+     */
+    public static Recording read(InputStream in) throws IOException {
+        Cursor cursor = new Cursor(in, null);
+        List<Move> moves = new ArrayList<>(Math.max(cursor.size(), 0));
+        try {
+            while (cursor.hasNext()) {
+                moves.add(cursor.next());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new Recording(cursor.getStateName(), moves);
+    }
+
+    /**
+     * Open a move log to read its moves one at a time. Only the header is read
+     * up front, so a log of any length opens straight away and is read in
+     * constant memory.
+     *
+     * @param file the move log file, which may be gzip or deflate compressed
+     * @return a cursor at the first move of the log
+     * @throws IOException if the file cannot be read or is not a move log
+     */
+    public static Cursor open(File file) throws IOException {
+        InputStream in = Compression.open(file);
+        try {
+            return new Cursor(in, file);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the moves of a move log in order as they are asked for.
+     */
+    public static class Cursor implements ReplaySource {
+        private final File file;
+        private DataInputStream in;
+        private final String stateName;
+        private final int count;
+        private final boolean marksUntimed;
+        private int position;
+        private long ticks;
+        private List<Keyframe> keyframes;
+        private Move pending;
+        private boolean ended;
+
+        private Cursor(InputStream in, File file) throws IOException {
+            this.file = file;
+            this.in = new DataInputStream(new BufferedInputStream(in));
+            int magic = this.in.readInt();
+            if (!isMagic(magic)) {
+                throw new IOException("Not a move log");
+            }
+            marksUntimed = magic == MAGIC || magic == STREAM_MAGIC;
+            stateName = this.in.readUTF();
+            if (magic == STREAM_MAGIC || magic == OLD_STREAM_MAGIC) {
+                count = -1;
+                return;
+            }
+            long count = readVarint(this.in);
+            if (count > Integer.MAX_VALUE) {
+                throw new IOException("Too many moves: " + count);
+            }
+            this.count = (int) count;
+        }
+
+        /**
+         * Get the file name of the save holding the starting state.
+         *
+         * @return the file name, relative to the directory of the log
+         */
+        public String getStateName() {
+            return stateName;
+        }
+
+        /**
+         * Move to the keyframe at or before a move, so that replaying on from
+         * the keyframe reaches that move. The board being replayed on has to be
+         * put into the state of the keyframe before the next move is played.
+         * An uncompressed log skips straight to the keyframe; a compressed one
+         * has to be read through from its start.
+         *
+         * @param move the number of moves to have been played
+         * @return the keyframe now reached, or null if the log has none, in
+         * which case the cursor is left where it was
+         * @throws IOException if the log cannot be read
+         * @throws UnsupportedOperationException if the log was read from a stream
+         */
+        Keyframe seek(int move) throws IOException {
+            if (file == null) {
+                throw new UnsupportedOperationException("Only logs opened from a file can seek");
+            }
+            if (keyframes == null) {
+                keyframes = readKeyframes(file);
+            }
+            int low = 0;
+            int high = keyframes.size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (keyframes.get(middle).move() <= move) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            if (high < 0) {
+                return null;
+            }
+            Keyframe keyframe = keyframes.get(high);
+            InputStream raw = Compression.open(file);
+            try {
+                raw.skipNBytes(keyframe.offset());
+            } catch (IOException | RuntimeException e) {
+                raw.close();
+                throw e;
+            }
+            in.close();
+            in = new DataInputStream(new BufferedInputStream(raw));
+            position = keyframe.move();
+            ticks = keyframe.ticks();
+            return keyframe;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (count >= 0) {
+                return position < count;
+            }
+            // a streamed log ends where the file does, possibly part way through a move
+            if (pending == null && !ended) {
+                try {
+                    pending = readMove();
+                } catch (EOFException e) {
+                    ended = true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return pending != null;
+        }
+
+        @Override
+        public Move next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                Move move = pending == null ? readMove() : pending;
+                pending = null;
+                position++;
+                return move;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private Move readMove() throws IOException {
+            long code = readVarint(in);
+            String direction = DIRECTIONS[(int) (code & 3)].name();
+            long delta = code >>> 2;
+            if (marksUntimed) {
+                if (delta == 0) {
+                    return new Move(direction, Double.NaN);
+                }
+                delta--;
+            }
+            ticks += unzigzag(delta);
+            return new Move(direction, (double) ticks / GameClock.TICKS_PER_SECOND);
+        }
+
+        @Override
+        public int position() {
+            return position;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Read the keyframes that follow the moves of a log.
+     *
+     * @param file the move log file
+     * @return the keyframes in order of their moves, empty if the log has none
+     * @throws IOException if the file cannot be read
+     */
+    static List<Keyframe> readKeyframes(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Compression.open(file)))) {
+            int magic = in.readInt();
+            if (magic == STREAM_MAGIC || magic == OLD_STREAM_MAGIC) {
+                return List.of();
+            }
+            if (!isMagic(magic)) {
+                throw new IOException("Not a move log");
+            }
+            in.readUTF();
+            for (long i = readVarint(in); i > 0; i--) {
+                readVarint(in);
+            }
+            long count;
+            try {
+                count = readVarint(in);
+            } catch (EOFException e) {
+                return List.of();
+            }
+            List<Keyframe> keyframes = new ArrayList<>();
+            for (long i = 0; i < count; i++) {
+                keyframes.add(Keyframe.read(in));
+            }
+            return keyframes;
+        }
+    }
+
+    /**
+     * Get the game time of a move in ticks.
+     *
+     * @param time the game time in seconds
+     * @return the nearest tick
+     */
+    static long ticksOf(double time) {
+        return Math.round(time * GameClock.TICKS_PER_SECOND);
+    }
+
+    static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new EOFException("Malformed varint");
+    }
+
+    private static long zigzag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static long unzigzag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+}
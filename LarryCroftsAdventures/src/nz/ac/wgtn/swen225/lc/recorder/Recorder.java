@@ -1,39 +1,124 @@
 package nz.ac.wgtn.swen225.lc.recorder;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.stream.JsonReader;
 import nz.ac.wgtn.swen225.lc.app.App;
+import nz.ac.wgtn.swen225.lc.app.GameSession;
 import nz.ac.wgtn.swen225.lc.app.Move;
+import nz.ac.wgtn.swen225.lc.domain.Board;
+import nz.ac.wgtn.swen225.lc.domain.Chap;
+import nz.ac.wgtn.swen225.lc.domain.GameEngine;
+import nz.ac.wgtn.swen225.lc.domain.MoveHistory;
 
 import javax.swing.*;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Timer;
-import java.util.TimerTask;
 
 
 public class Recorder {
     /**
-     * loads the moves from the chosen file
+     * loads the moves from the chosen file, which may be gzip or deflate compressed.
+     * The file can be a save with its moves in its actions, a save with a move log
+     * next to it, or the move log itself
      * @param file chosen file
      * @return moves in that file
      */
     public ArrayList<Move> loadSave(File file,App app) {
-        try(JsonReader reader = new JsonReader(new FileReader(file))){
+        try (ReplaySource source = openReplay(file, app)) {
             ArrayList<Move> moves = new ArrayList<>();
-            //getting the actions array out of the file to then be able to use the actions
-            JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
-            JsonArray jsonMoves = jsonObject.getAsJsonArray("actions");
-
-            for (int i = 0; i < jsonMoves.size(); i++){
-                moves.add(new Move(jsonMoves.get(i).getAsString(),1));
+            while (source.hasNext()) {
+                moves.add(source.next());
             }
-            //pass file name to load the level the player started on and position where they started from
-            app.setup(file);
             return moves;
+        } catch (UncheckedIOException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * sets the app up at the start of the chosen recording and opens its moves,
+     * which are read from the file as the replay asks for them. The game keeps a
+     * history of its newest moves so the replay can step back over them
+     * @param file chosen file
+     * @param app app component to set up
+     * @return the moves of the recording, to be closed once the replay is done
+     */
+    public ReplaySource openReplay(File file, App app) {
+        try {
+            File state = stateOf(file);
+            ReplaySource source = openMoves(file);
+            //pass file name to load the level the player started on and position where they started from
+            app.setupReplay(state);
+            app.getSession().getEngine().setHistory(new MoveHistory(RewindableSource.DEPTH));
+            return new RewindableSource(source);
+        } catch(IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * finds the save holding the starting state of a recording
+     * @param file a save or a move log
+     * @return the save the recording starts from
+     * @throws IOException if the file cannot be read
+     */
+    public static File stateOf(File file) throws IOException {
+        if (!MoveLog.isMoveLog(file)) {
+            return file;
+        }
+        try (MoveLog.Cursor cursor = MoveLog.open(file)) {
+            return new File(file.getParentFile(), cursor.getStateName());
+        }
+    }
+
+    /**
+     * opens the moves of a recording without setting anything up
+     * @param file a save or a move log
+     * @return the moves of the recording
+     * @throws IOException if the file cannot be read
+     */
+    public static ReplaySource openMoves(File file) throws IOException {
+        if (MoveLog.isMoveLog(file)) {
+            return MoveLog.open(file);
+        }
+        ReplaySource source = new JsonReplaySource(file);
+        File log = MoveLog.logFor(file);
+        if (!source.hasNext() && log.isFile()) {
+            source.close();
+            return MoveLog.open(log);
+        }
+        return source;
+    }
+
+    /**
+     * jumps a replay to a move, putting the game into the state it was in after
+     * that many moves. Move logs restore the keyframe before the move and replay
+     * the few moves after it, other recordings are replayed from the start
+     * @param app app component to fetch the correct things
+     * @param file the loaded file
+     * @param moves the moves we are reading from
+     * @param move the number of moves to have been played
+     * @return the moves to carry on the replay from, which may be a new source
+     */
+    public static ReplaySource seek(App app, File file, ReplaySource moves, int move) {
+        try {
+            ReplaySource source = moves instanceof RewindableSource rewindable ? rewindable.getSource() : moves;
+            Keyframe keyframe = source instanceof MoveLog.Cursor cursor ? cursor.seek(move) : null;
+            if (keyframe != null) {
+                keyframe.restore(new Board(stateOf(file)).copyCells(), app.getBoard());
+                // the moves before the keyframe were never played on this board, so they cannot be taken back
+                app.getSession().getEngine().setHistory(new MoveHistory(RewindableSource.DEPTH));
+                source = new RewindableSource(source);
+            } else {
+                moves.close();
+                source = new Recorder().openReplay(file, app);
+            }
+            GameSession session = app.getSession();
+            while (source.position() < move && source.hasNext()) {
+                session.move(Chap.Direction.valueOf(source.next().move()));
+            }
+            app.getRenderer().centreCamera();
+            app.repaint();
+            return source;
         } catch(IOException e) {
             throw new RuntimeException(e);
         }
@@ -43,9 +128,9 @@ public class Recorder {
      * Logic of the step funtion
      * @param app app component to fetch the correct things
      * @param file the loaded file
-     * @param moves the list of moves we are reading from
+     * @param moves the moves we are reading from
      */
-    public static void step(App app,File file, ArrayList<Move> moves){
+    public static void step(App app,File file, ReplaySource moves){
         if (file == null){
             JOptionPane.showMessageDialog(null,
                     "You need to load a file first!",
@@ -53,8 +138,9 @@ public class Recorder {
                     JOptionPane.PLAIN_MESSAGE);
         } else {
             app.repaint();
-            if (!moves.isEmpty()) {
-                app.moveAction(moves.remove(0).move());
+            if (moves.hasNext()) {
+                // replayMove never drops the move, so the board keeps up with the moves read
+                app.replayMove(moves.next());
             } else{
                 JOptionPane.showMessageDialog(null,
                         "All moves have been shown!",
@@ -66,42 +152,176 @@ public class Recorder {
     }
 
     /**
-     * auto replay logic
+     * step back logic: takes back the last move replayed
+     * @param app app component to fetch the correct things
+     * @param file the loaded file
+     * @param moves the moves we are reading from
+     */
+    public static void stepBack(App app, File file, ReplaySource moves){
+        if (file == null){
+            JOptionPane.showMessageDialog(null,
+                    "You need to load a file first!",
+                    "File not chosen!",
+                    JOptionPane.PLAIN_MESSAGE);
+        } else if (back(app, moves)) {
+            app.repaint();
+        } else {
+            JOptionPane.showMessageDialog(null,
+                    "The replay is at the start!",
+                    "Replay at start!",
+                    JOptionPane.PLAIN_MESSAGE);
+        }
+    }
+
+    /**
+     * reverse replay logic: takes the moves back one at a time until the start.
+     * The moves are taken back on the Swing event thread, so they never race the game
      * @param app  app component to fetch the correct things
      * @param file the loaded file
-     * @param moves the list of moves we are reading from
+     * @param moves the moves we are reading from
      * @param speed the speed the user sets on the slider
+     * @param onMove called after each move is taken back, such as to move the timeline
+     * @return the timer taking the moves back, to stop it early, or null if no file is loaded
+     */
+    public static Timer reverse(App app, File file, ReplaySource moves, int speed, Runnable onMove){
+        if (file == null){
+            JOptionPane.showMessageDialog(null,
+                    "You need to load a file first!",
+                    "File not chosen!",
+                    JOptionPane.PLAIN_MESSAGE);
+            return null;
+        }
+        Timer reverseTimer = new Timer(600/speed, null);
+        reverseTimer.addActionListener(e -> {
+            if (app.paused) {
+                return;
+            }
+            if (!back(app, moves)) {
+                reverseTimer.stop();
+                JOptionPane.showMessageDialog(null,
+                        "The replay is back at the start!",
+                        "Replay at start!",
+                        JOptionPane.PLAIN_MESSAGE);
+                return;
+            }
+            app.repaint();
+            onMove.run();
+        });
+        reverseTimer.setInitialDelay(0);
+        reverseTimer.start();
+        return reverseTimer;
+    }
+
+    /**
+     * takes back the last move replayed, on the board and in the moves
+     * @param app app component to fetch the correct things
+     * @param moves the moves we are reading from
+     * @return false if there was no move to take back
+     */
+    private static boolean back(App app, ReplaySource moves) {
+        // the moves only step back once the board has, so the two never disagree
+        if (!(moves instanceof RewindableSource rewindable) || !rewindable.canStepBack()
+                || !app.getSession().getEngine().undo()) {
+            return false;
+        }
+        rewindable.back();
+        app.getRenderer().centreCamera();
+        return true;
+    }
+
+    /**
+     * auto replay logic: plays the moves at the times they were recorded, scaled by the speed
+     * @param app  app component to fetch the correct things
+     * @param file the loaded file
+     * @param moves the moves we are reading from
+     * @param speed how many times faster than recorded to replay
+     * @return the running replay, or null if no file is loaded
+     */
+    public static ReplayScheduler auto(App app, File file, ReplaySource moves, double speed){
+        return auto(app, file, moves, speed, () -> {});
+    }
+
+    /**
+     * auto replay logic: plays the moves at the times they were recorded, scaled by the speed.
+     * The moves are played on the Swing event thread, so they never race the game
+     * @param app  app component to fetch the correct things
+     * @param file the loaded file
+     * @param moves the moves we are reading from
+     * @param speed how many times faster than recorded to replay
+     * @param onMove called after each move is played, such as to move the timeline
+     * @return the running replay, to stop it or change its speed, or null if no file is loaded
      */
-    public static void auto (App app,File file, ArrayList<Move> moves, int speed){
+    public static ReplayScheduler auto(App app, File file, ReplaySource moves, double speed, Runnable onMove){
+        if (file == null){
+            JOptionPane.showMessageDialog(null,
+                    "You need to load a file first!",
+                    "File not chosen!",
+                    JOptionPane.PLAIN_MESSAGE);
+            return null;
+        }
+        ReplayScheduler replay = new ReplayScheduler(moves, move -> {
+            app.replayMove(move);
+            onMove.run();
+        }, () -> app.paused);
+        replay.setSpeed(speed);
+        replay.setOnFinish(() -> JOptionPane.showMessageDialog(null,
+                "All moves have been shown!",
+                "Replay finished!",
+                JOptionPane.PLAIN_MESSAGE));
+        replay.start();
+        return replay;
+    }
+
+    /**
+     * fast forward logic: plays every move left straight onto the game, with no
+     * animation or timer in between, then shows where the replay ended up
+     * @param app app component to fetch the correct things
+     * @param file the loaded file
+     * @param moves the moves we are reading from
+     */
+    public static void fastForward(App app, File file, ReplaySource moves){
         if (file == null){
             JOptionPane.showMessageDialog(null,
                     "You need to load a file first!",
                     "File not chosen!",
                     JOptionPane.PLAIN_MESSAGE);
         } else {
-            //timer to be able to go through each action at a certain speed (set by slider)
-            Timer recordingIndicatorTimer = new Timer();
-            recordingIndicatorTimer.scheduleAtFixedRate(new TimerTask() {
-                @Override
-                public void run() {
-                    if (!app.paused) {
-                        if (!moves.isEmpty()) {
-                            app.moveAction(moves.remove(0).move());
-                        } else {
-                            JOptionPane.showMessageDialog(null,
-                                    "All moves have been shown!",
-                                    "Replay finished!",
-                                    JOptionPane.PLAIN_MESSAGE);
-                            recordingIndicatorTimer.cancel();
-                        }
-                        app.repaint();
-                    }else {
-                        recordingIndicatorTimer.schedule(this, 2000);
-                    }
-
-                }
-            }, 0, 600/speed) ;
+            fastForward(app.getSession().getEngine(), moves);
+            app.getRenderer().centreCamera();
+            app.repaint();
+        }
+    }
+
+    /**
+     * plays every move left onto an engine. Nothing is drawn or waited for, so
+     * this runs as fast as the domain can apply the moves
+     * @param engine the engine to play on
+     * @param moves the moves we are reading from
+     * @return the number of moves played
+     */
+    public static int fastForward(GameEngine engine, ReplaySource moves){
+        int played = 0;
+        while (moves.hasNext()) {
+            engine.move(Chap.Direction.valueOf(moves.next().move()));
+            played++;
+        }
+        return played;
+    }
 
+    /**
+     * replays a whole recording without a user interface, such as to check
+     * where it ends up
+     * @param file a save or a move log
+     * @return the engine in the state the recording finished in
+     * @throws IOException if the recording cannot be read
+     */
+    public static GameEngine fastForward(File file) throws IOException {
+        GameEngine engine = new GameEngine(stateOf(file));
+        try (ReplaySource moves = openMoves(file)) {
+            fastForward(engine, moves);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+        return engine;
     }
 }
@@ -1,5 +1,6 @@
 package nz.ac.wgtn.swen225.lc.recorder;
 
+import com.google.gson.stream.JsonWriter;
 import nz.ac.wgtn.swen225.lc.app.App;
 import nz.ac.wgtn.swen225.lc.app.Move;
 import nz.ac.wgtn.swen225.lc.app.RecorderPanel;
@@ -36,8 +37,8 @@ public class RecorderTest {
     @Test
     public void testStepAndAuto() {
         rp.startRecording();
-        assertDoesNotThrow(() -> r.step(app,Persistency.level1,testList));
-        assertDoesNotThrow(() -> r.auto(app,Persistency.level1,testList,2));
+        assertDoesNotThrow(() -> r.step(app,Persistency.level1,ReplaySource.of(testList)));
+        assertDoesNotThrow(() -> r.auto(app,Persistency.level1,ReplaySource.of(testList),2));
         rp.stopRecording();
     }
     @Test
@@ -54,4 +55,5 @@ public class RecorderTest {
     public void testLoading(){
         testList = assertDoesNotThrow(() -> new Recorder().loadSave(Persistency.level1,app));
     }
+
 }
@@ -0,0 +1,182 @@
+package nz.ac.wgtn.swen225.lc.recorder;
+
+import nz.ac.wgtn.swen225.lc.app.Move;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Streams a recording to its move log while the game is played, so a long
+ * recording is not held in memory and survives the game crashing. Moves are
+ * encoded into a buffer as they are made, which costs no disk I/O, and a
+ * shared background thread appends the buffer to the log and syncs it every
+ * {@link #FLUSH_MILLIS} milliseconds. A crash loses at most the moves of the
+ * last interval, and the log stays readable up to the last move written.
+ * <p>
+ * The log is written in the streamed form of {@link MoveLog}, which
+ * {@link MoveLog#finish} turns into the compact form once the recording stops.
+ */
+public class RecordingSink implements Consumer<Move>, AutoCloseable {
+    /**
+     * How often the buffered moves are written to disk, in milliseconds.
+     */
+    public static final long FLUSH_MILLIS = 250;
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "recording-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File file;
+    private final FileChannel channel;
+    private final ScheduledFuture<?> flushing;
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private DataOutputStream data = new DataOutputStream(buffer);
+    private long lastTicks;
+    private int count;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * Start a move log, replacing any file already there.
+     *
+     * @param file      the move log file
+     * @param stateName the file name of the save holding the starting state
+     * @throws IOException if the log cannot be created
+     */
+    public RecordingSink(File file, String stateName) throws IOException {
+        this.file = file;
+        Files.createDirectories(file.getAbsoluteFile().toPath().getParent());
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            MoveLog.writeStreamHeader(data, stateName);
+            flush();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        flushing = FLUSHER.scheduleWithFixedDelay(this::flushQuietly, FLUSH_MILLIS, FLUSH_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the move log being written.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Get the number of moves appended so far.
+     *
+     * @return the number of moves
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Append a move. This only encodes the move into memory, so it is safe to
+     * call on the thread handling input.
+     *
+     * @param move the move that was made
+     * @throws IllegalStateException if the sink has been closed
+     */
+    @Override
+    public synchronized void accept(Move move) {
+        if (closed) {
+            throw new IllegalStateException("The recording has stopped");
+        }
+        try {
+            lastTicks = MoveLog.writeMove(data, move, lastTicks);
+            count++;
+        } catch (IOException e) {
+            // writing to memory does not fail
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write the moves buffered so far to the log and sync it. Nothing is
+     * written or synced if no moves have been buffered since the last flush.
+     *
+     * @throws IOException if the log cannot be written, or an earlier
+     *                     background write failed
+     */
+    public void flush() throws IOException {
+        // the channel is held from taking the buffer until it is written, so buffers reach the log in order
+        synchronized (channel) {
+            if (!channel.isOpen()) {
+                return;
+            }
+            byte[] bytes;
+            synchronized (this) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (buffer.size() == 0) {
+                    // an idle recording costs no sync
+                    return;
+                }
+                bytes = buffer.toByteArray();
+                buffer = new ByteArrayOutputStream();
+                data = new DataOutputStream(buffer);
+            }
+            ByteBuffer out = ByteBuffer.wrap(bytes);
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(false);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+            }
+            flushing.cancel(false);
+        }
+    }
+
+    /**
+     * Stop the background flushing, write the last moves and close the log.
+     *
+     * @throws IOException if the last moves cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flushing.cancel(false);
+        try {
+            flush();
+        } finally {
+            synchronized (channel) {
+                channel.close();
+            }
+        }
+    }
+}
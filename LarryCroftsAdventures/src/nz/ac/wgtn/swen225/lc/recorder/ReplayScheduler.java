@@ -0,0 +1,258 @@
+package nz.ac.wgtn.swen225.lc.recorder;
+
+import nz.ac.wgtn.swen225.lc.app.Move;
+
+import javax.swing.Timer;
+import java.util.LongSummaryStatistics;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Plays the moves of a replay at the times they were recorded, relative to the
+ * first move played and scaled by a speed factor. The scheduler runs on the
+ * Swing event dispatch thread from a single-shot {@link Timer} set for the
+ * next move due. Moves are therefore applied on the same thread that steps
+ * and draws the game.
+ * <p>
+ * Moves from older recordings have no recorded time, which is NaN. Those
+ * are played {@link #UNTIMED_INTERVAL} seconds of replay time apart, the
+ * fixed interval replays used before moves were timed.
+ * <p>
+ * Replay time is kept on one clock and only passes while the game is not
+ * paused. The speed can be changed while the replay runs. How late each move
+ * is applied is kept, so the jitter of a replay can be measured.
+ */
+public class ReplayScheduler {
+    /**
+     * The longest the scheduler sleeps before looking at the clock again, so
+     * pausing and changing the speed take effect quickly, in nanoseconds.
+     */
+    static final long MAX_WAIT_NANOS = 100_000_000L;
+
+    /**
+     * The seconds of replay time between moves that have no recorded time.
+     */
+    public static final double UNTIMED_INTERVAL = 0.6;
+
+    private final ReplaySource moves;
+    private final Consumer<Move> apply;
+    private final BooleanSupplier paused;
+    private final LongSupplier clock;
+    private final Timer timer;
+    private final LongSummaryStatistics lateness = new LongSummaryStatistics();
+    private Runnable onFinish = () -> {};
+    private double speed = 1;
+    private Move pending; // read from the moves but not yet due
+    private double pendingDue; // the replay time the pending move is due at
+    private double first = Double.NaN; // the recorded time of the first timed move since starting
+    private double firstDue; // the replay time the first timed move was due at
+    private double lastDue = Double.NaN; // the replay time the last move read was due at
+    private double replayed; // the seconds of recorded time played so far
+    private long last; // the clock when replay time was last brought up to date
+    private boolean running;
+    private boolean finished;
+
+    /**
+     * Set up a replay on the system clock.
+     *
+     * @param moves  the moves to replay
+     * @param apply  plays a move on the game, called on the event dispatch thread
+     * @param paused whether the game is paused, in which case replay time stands still
+     */
+    public ReplayScheduler(ReplaySource moves, Consumer<Move> apply, BooleanSupplier paused) {
+        this(moves, apply, paused, System::nanoTime);
+    }
+
+    /**
+     * Set up a replay on a given clock.
+     *
+     * @param moves  the moves to replay
+     * @param apply  plays a move on the game
+     * @param paused whether the game is paused
+     * @param clock  the time now, in nanoseconds
+     */
+    ReplayScheduler(ReplaySource moves, Consumer<Move> apply, BooleanSupplier paused, LongSupplier clock) {
+        if (moves == null || apply == null || paused == null) {
+            throw new IllegalArgumentException();
+        }
+        this.moves = moves;
+        this.apply = apply;
+        this.paused = paused;
+        this.clock = clock;
+        last = clock.getAsLong();
+        timer = new Timer(0, e -> tick());
+        timer.setRepeats(false);
+    }
+
+    /**
+     * Set how fast the replay runs compared to the recording, which takes
+     * effect straight away.
+     *
+     * @param speed the speed factor, such as 2 for twice as fast
+     * @throws IllegalArgumentException if the speed is not above zero
+     */
+    public void setSpeed(double speed) {
+        if (!(speed > 0) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("The replay speed must be above zero");
+        }
+        bringUpToDate();
+        this.speed = speed;
+    }
+
+    /**
+     * Get how fast the replay runs compared to the recording.
+     *
+     * @return the speed factor
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Set what to do once every move has been played.
+     *
+     * @param onFinish called on the event dispatch thread after the last move
+     */
+    public void setOnFinish(Runnable onFinish) {
+        this.onFinish = onFinish == null ? () -> {} : onFinish;
+    }
+
+    /**
+     * Start or carry on the replay. The next move is played straight away and
+     * the moves after it at their recorded times from there.
+     */
+    public void start() {
+        if (running || finished) {
+            return;
+        }
+        running = true;
+        first = Double.NaN;
+        lastDue = Double.NaN;
+        replayed = 0;
+        if (pending != null) {
+            pendingDue = dueOf(pending);
+        }
+        last = clock.getAsLong();
+        tick();
+    }
+
+    /**
+     * Stop the replay. A move read from the moves but not played yet is
+     * handed back if the moves can step back, so stepping on by hand carries
+     * on from the right move.
+     */
+    public void stop() {
+        running = false;
+        timer.stop();
+        if (pending != null && moves instanceof RewindableSource rewindable && rewindable.back()) {
+            pending = null;
+        }
+    }
+
+    /**
+     * Check whether the replay is running.
+     *
+     * @return true if started and not yet stopped or finished
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Check whether every move has been played.
+     *
+     * @return true once the replay has finished
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Get how late each move was played compared to when it was due, in
+     * nanoseconds of real time.
+     *
+     * @return a copy of the lateness of every move played
+     */
+    public LongSummaryStatistics getLateness() {
+        LongSummaryStatistics copy = new LongSummaryStatistics();
+        copy.combine(lateness);
+        return copy;
+    }
+
+    private void tick() {
+        if (!running) {
+            return;
+        }
+        long wait = advance();
+        if (wait < 0) {
+            running = false;
+            onFinish.run();
+            return;
+        }
+        // round up, so the timer does not wake just before the move is due
+        timer.setInitialDelay((int) ((wait + 999_999) / 1_000_000));
+        timer.restart();
+    }
+
+    /**
+     * Bring replay time up to the clock and play every move that is due.
+     *
+     * @return the nanoseconds of real time until the next move is due, capped
+     * at {@link #MAX_WAIT_NANOS}, or -1 once every move has been played
+     */
+    long advance() {
+        bringUpToDate();
+        if (finished) {
+            return -1;
+        }
+        if (paused.getAsBoolean()) {
+            return MAX_WAIT_NANOS;
+        }
+        while (pending != null || moves.hasNext()) {
+            if (pending == null) {
+                pending = moves.next();
+                pendingDue = dueOf(pending);
+            }
+            double early = pendingDue - replayed;
+            if (early > 0) {
+                return Math.min(MAX_WAIT_NANOS, (long) Math.ceil(early / speed * 1e9));
+            }
+            lateness.accept((long) (-early / speed * 1e9));
+            Move move = pending;
+            pending = null;
+            apply.accept(move);
+        }
+        finished = true;
+        return -1;
+    }
+
+    /**
+     * Work out when a move is due, in replay time since starting. Timed moves
+     * keep their recorded spacing from the first timed move, and untimed
+     * moves follow the move before at the fixed interval.
+     */
+    private double dueOf(Move move) {
+        double start = Double.isNaN(lastDue) ? 0 : lastDue + UNTIMED_INTERVAL;
+        double due;
+        if (Double.isNaN(move.time())) {
+            due = start;
+        } else {
+            if (Double.isNaN(first)) {
+                first = move.time();
+                firstDue = start;
+            }
+            due = firstDue + move.time() - first;
+        }
+        lastDue = due;
+        return due;
+    }
+
+    private void bringUpToDate() {
+        long now = clock.getAsLong();
+        if (!paused.getAsBoolean()) {
+            replayed += (now - last) / 1e9 * speed;
+        }
+        last = now;
+    }
+}
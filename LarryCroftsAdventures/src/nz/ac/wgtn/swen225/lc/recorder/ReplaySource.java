@@ -0,0 +1,93 @@
+package nz.ac.wgtn.swen225.lc.recorder;
+
+import nz.ac.wgtn.swen225.lc.app.Move;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The moves of a recording, handed out in order one at a time. Sources backed
+ * by a file read each move as it is asked for, so a replay can start before
+ * the whole recording has been read and never holds more than a buffer of it
+ * in memory. Reading a file can fail part way through, which is reported as an
+ * {@link java.io.UncheckedIOException}.
+ */
+public interface ReplaySource extends Iterator<Move>, AutoCloseable {
+    /**
+     * Check whether there are moves left to replay.
+     *
+     * @return true if {@link #next()} will return a move
+     */
+    @Override
+    boolean hasNext();
+
+    /**
+     * Get the next move of the recording.
+     *
+     * @return the next move
+     * @throws NoSuchElementException if every move has been read
+     */
+    @Override
+    Move next();
+
+    /**
+     * Get the number of moves read so far.
+     *
+     * @return the index of the next move
+     */
+    int position();
+
+    /**
+     * Get the number of moves in the recording, if it is known before the
+     * moves have been read.
+     *
+     * @return the number of moves, or -1 if it is not known
+     */
+    int size();
+
+    /**
+     * Release the file behind this source, if any.
+     */
+    @Override
+    void close();
+
+    /**
+     * Get a source over moves already held in memory.
+     *
+     * @param moves the moves to replay
+     * @return a source at the first move
+     */
+    static ReplaySource of(List<Move> moves) {
+        return new ReplaySource() {
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                return position < moves.size();
+            }
+
+            @Override
+            public Move next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return moves.get(position++);
+            }
+
+            @Override
+            public int position() {
+                return position;
+            }
+
+            @Override
+            public int size() {
+                return moves.size();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
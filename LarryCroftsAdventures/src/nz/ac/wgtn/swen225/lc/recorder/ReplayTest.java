@@ -0,0 +1,401 @@
+package nz.ac.wgtn.swen225.lc.recorder;
+
+import com.google.gson.stream.JsonWriter;
+import nz.ac.wgtn.swen225.lc.app.GameSession;
+import nz.ac.wgtn.swen225.lc.app.Move;
+import nz.ac.wgtn.swen225.lc.domain.Board;
+import nz.ac.wgtn.swen225.lc.domain.Chap;
+import nz.ac.wgtn.swen225.lc.domain.GameClock;
+import nz.ac.wgtn.swen225.lc.domain.GameEngine;
+import nz.ac.wgtn.swen225.lc.persistency.Compression;
+import nz.ac.wgtn.swen225.lc.persistency.JsonAdapters;
+import nz.ac.wgtn.swen225.lc.persistency.Persistency;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Tests of recording and replaying that need no user interface, so they run
+ * without a display or an audio device.
+ */
+public class ReplayTest {
+    File testFile = new File("LarryCroftsAdventures/src/nz/ac/wgtn/swen225/lc/recorder/RecorderTestFile.json");
+    List<Move> testList = List.of(new Move("UP", 1), new Move("LEFT", 1), new Move("DOWN", 1),
+            new Move("LEFT", 1), new Move("RIGHT", 1), new Move("UP", 1));
+
+    @Test
+    public void testSessionRecordsOnlyItsOwnMoves() {
+        GameSession recorded = new GameSession(Persistency.level1);
+        GameSession other = new GameSession(Persistency.level1);
+        recorded.startRecording();
+        recorded.move(Chap.Direction.LEFT);
+        other.move(Chap.Direction.RIGHT);
+        assertEquals(1, recorded.getMoves().size());
+        assertTrue(other.getMoves().isEmpty());
+        assertNotEquals(recorded.getBoard().getChap().getX(), other.getBoard().getChap().getX());
+    }
+
+    @Test
+    public void testSessionsRunInParallel() {
+        List<GameSession> sessions = IntStream.range(0, 200)
+                .mapToObj(i -> new GameSession(Persistency.level1))
+                .toList();
+        sessions.parallelStream().forEach(session -> {
+            session.startRecording();
+            for (int i = 0; i < 1000; i++) {
+                session.move(Chap.Direction.values()[i % 4]);
+            }
+        });
+        int size = sessions.get(0).getMoves().size();
+        for (GameSession session : sessions) {
+            assertEquals(size, session.getMoves().size());
+        }
+    }
+
+    @Test
+    public void testMoveLogRoundTrip() throws IOException {
+        List<Move> moves = new ArrayList<>();
+        Random random = new Random(7);
+        long ticks = 0;
+        for (int i = 0; i < 10000; i++) {
+            ticks += random.nextInt(80);
+            moves.add(new Move(Chap.Direction.values()[random.nextInt(4)].name(),
+                    (double) ticks / GameClock.TICKS_PER_SECOND));
+        }
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        MoveLog.write(binary, "recorded-game-1.json", moves);
+        StringWriter json = new StringWriter();
+        JsonWriter writer = new JsonWriter(json);
+        writer.setIndent("    ");
+        writer.beginArray();
+        for (Move move : moves) {
+            JsonAdapters.MOVES.write(writer, move);
+        }
+        writer.endArray();
+        assertTrue(json.toString().length() > 10 * binary.size());
+
+        MoveLog.Recording recording = MoveLog.read(new ByteArrayInputStream(binary.toByteArray()));
+        assertEquals("recorded-game-1.json", recording.stateName());
+        assertEquals(moves, recording.moves());
+    }
+
+    @Test
+    public void testMoveLogFile() throws IOException {
+        File save = new File(Files.createTempDirectory("saves").toFile(), "recorded-game-1.json.gz");
+        File log = MoveLog.logFor(save);
+        assertEquals("recorded-game-1" + MoveLog.EXTENSION, log.getName());
+        MoveLog.write(log, save.getName(), testList);
+        assertTrue(MoveLog.isMoveLog(log));
+        assertFalse(MoveLog.isMoveLog(Persistency.level1));
+        assertEquals(testList, MoveLog.read(log).moves());
+    }
+
+    @Test
+    public void testMoveLogKeepsUntimedMoves() throws IOException {
+        List<Move> moves = List.of(new Move("UP", Double.NaN), new Move("LEFT", Double.NaN),
+                new Move("DOWN", 2.5), new Move("RIGHT", Double.NaN), new Move("UP", 2.0), new Move("UP", 3.1));
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        MoveLog.write(binary, "saved-game-1.json", moves);
+        List<Move> read = MoveLog.read(new ByteArrayInputStream(binary.toByteArray())).moves();
+        assertEquals(moves, read);
+        assertTrue(Double.isNaN(read.get(0).time()));
+        assertEquals(2.0, read.get(4).time());
+
+        File log = new File(Files.createTempDirectory("saves").toFile(), "saved-game-1" + MoveLog.EXTENSION);
+        MoveLog.write(log, "level1.json", moves, new Board(Persistency.level1));
+        try (MoveLog.Cursor cursor = MoveLog.open(log)) {
+            for (Move move : moves) {
+                assertEquals(move, cursor.next());
+            }
+            assertFalse(cursor.hasNext());
+        }
+    }
+
+    @Test
+    public void testReplaySourceReadsOnDemand() throws IOException {
+        try (ReplaySource source = Recorder.openMoves(testFile)) {
+            assertEquals(-1, source.size());
+            assertEquals("LEFT", source.next().move());
+            assertEquals(1, source.position());
+            int count = 1;
+            while (source.hasNext()) {
+                source.next();
+                count++;
+            }
+            assertEquals(9, count);
+            assertThrows(NoSuchElementException.class, source::next);
+        }
+
+        File save = new File(Files.createTempDirectory("saves").toFile(), "recorded-game-1.json");
+        Files.writeString(save.toPath(), "{\"actions\": []}");
+        MoveLog.write(MoveLog.logFor(save), save.getName(), testList);
+        assertEquals(save, Recorder.stateOf(MoveLog.logFor(save)));
+        try (ReplaySource source = Recorder.openMoves(save)) {
+            assertEquals(testList.size(), source.size());
+            for (Move move : testList) {
+                assertEquals(move, source.next());
+            }
+            assertFalse(source.hasNext());
+        }
+    }
+
+    @Test
+    public void testKeyframeSeek() throws IOException {
+        GameSession session = new GameSession(Persistency.level1);
+        session.startRecording();
+        Random random = new Random(3);
+        while (session.getMoves().size() < 3 * MoveLog.KEYFRAME_INTERVAL + 7) {
+            session.step();
+            session.move(Chap.Direction.values()[random.nextInt(4)]);
+        }
+        List<Move> moves = session.stopRecording();
+        File log = new File(Files.createTempDirectory("saves").toFile(), "recorded-game-1" + MoveLog.EXTENSION);
+        MoveLog.write(log, "level1.json", moves, new Board(Persistency.level1));
+        byte[] start = new Board(Persistency.level1).copyCells();
+
+        try (MoveLog.Cursor cursor = MoveLog.open(log)) {
+            for (int target : new int[]{moves.size(), 2 * MoveLog.KEYFRAME_INTERVAL + 3, 0, 1234}) {
+                Keyframe keyframe = cursor.seek(target);
+                assertTrue(target - keyframe.move() < MoveLog.KEYFRAME_INTERVAL);
+                assertEquals(keyframe.move(), cursor.position());
+                GameEngine seeked = new GameEngine(Persistency.level1);
+                keyframe.restore(start, seeked.getBoard());
+                while (cursor.position() < target) {
+                    Move move = cursor.next();
+                    assertEquals(moves.get(cursor.position() - 1), move);
+                    seeked.move(Chap.Direction.valueOf(move.move()));
+                }
+                GameEngine played = new GameEngine(Persistency.level1);
+                for (Move move : moves.subList(0, target)) {
+                    played.move(Chap.Direction.valueOf(move.move()));
+                }
+                assertArrayEquals(played.getBoard().copyCells(), seeked.getBoard().copyCells());
+                assertEquals(played.getChap().getX(), seeked.getChap().getX());
+                assertEquals(played.getChap().getY(), seeked.getChap().getY());
+                assertEquals(played.getChap().getPlayerTreasureCount(), seeked.getChap().getPlayerTreasureCount());
+                assertArrayEquals(played.getChap().getInventory(), seeked.getChap().getInventory());
+            }
+        }
+
+        // a compressed stream cannot skip to a keyframe, so logs with keyframes are never compressed
+        File gzip = new File(log.getParentFile(), "recorded-game-2" + MoveLog.EXTENSION + Compression.GZIP_EXTENSION);
+        MoveLog.write(gzip, "level1.json", moves, new Board(Persistency.level1));
+        assertEquals(0x4C, Files.readAllBytes(gzip.toPath())[0]);
+        MoveLog.write(gzip, "level1.json", moves);
+        assertEquals(0x1F, Files.readAllBytes(gzip.toPath())[0]);
+        assertEquals(moves, MoveLog.read(gzip).moves());
+    }
+
+    @Test
+    public void testFastForward() throws IOException {
+        List<Move> moves = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            moves.add(new Move(i % 2 == 0 ? "UP" : "DOWN", i / 10.0));
+        }
+        moves.add(new Move("RIGHT", 10_000));
+        moves.add(new Move("RIGHT", 10_000));
+        File directory = Files.createTempDirectory("saves").toFile();
+        File state = new File(directory, "recorded-game-1.json");
+        Files.copy(Persistency.level1.toPath(), state.toPath());
+        MoveLog.write(MoveLog.logFor(state), state.getName(), moves, new Board(state));
+
+        GameEngine engine = Recorder.fastForward(MoveLog.logFor(state));
+        assertEquals(9, engine.getChap().getX());
+        assertEquals(6, engine.getChap().getY());
+        assertEquals(1, engine.getChap().getPlayerTreasureCount());
+        assertEquals(moves.size(), Recorder.fastForward(new GameEngine(state), ReplaySource.of(moves)));
+    }
+
+    @Test
+    public void testRewindableSource() {
+        RewindableSource source = new RewindableSource(ReplaySource.of(testList));
+        assertFalse(source.back());
+        Move first = source.next();
+        Move second = source.next();
+        assertTrue(source.back());
+        assertEquals(1, source.position());
+        assertEquals(second, source.next());
+        assertTrue(source.back());
+        assertTrue(source.back());
+        assertFalse(source.back());
+        assertEquals(0, source.position());
+        assertEquals(first, source.next());
+        int count = 1;
+        while (source.hasNext()) {
+            source.next();
+            count++;
+        }
+        assertEquals(testList.size(), count);
+
+        // only the newest moves up to the depth are kept
+        RewindableSource shallow = new RewindableSource(ReplaySource.of(testList), 2);
+        while (shallow.hasNext()) {
+            shallow.next();
+        }
+        assertTrue(shallow.back());
+        assertTrue(shallow.back());
+        assertFalse(shallow.canStepBack());
+        assertFalse(shallow.back());
+        assertEquals(testList.size() - 2, shallow.position());
+        assertEquals(testList.get(testList.size() - 2), shallow.next());
+    }
+
+    @Test
+    public void testStreamedRecordingSurvivesCrash() throws IOException {
+        File log = new File(Files.createTempDirectory("saves").toFile(), "recorded-game-1" + MoveLog.EXTENSION);
+        GameSession session = new GameSession(Persistency.level1);
+        RecordingSink sink = new RecordingSink(log, "level1.json");
+        session.startRecording(sink);
+        session.step();
+        session.move(Chap.Direction.RIGHT);
+        session.step();
+        session.move(Chap.Direction.RIGHT);
+        assertEquals(2, sink.getCount());
+        sink.flush();
+
+        // the log can be read while it is still being written
+        try (MoveLog.Cursor cursor = MoveLog.open(log)) {
+            assertEquals(-1, cursor.size());
+            assertEquals("level1.json", cursor.getStateName());
+            assertEquals("RIGHT", cursor.next().move());
+            assertEquals("RIGHT", cursor.next().move());
+            assertFalse(cursor.hasNext());
+        }
+
+        session.step();
+        session.move(Chap.Direction.UP);
+        // the moves are kept in memory too, so a save made while recording has them
+        assertEquals(3, session.getMoves().size());
+        List<Move> recorded = session.stopRecording();
+        sink.close();
+        assertThrows(IllegalStateException.class, () -> sink.accept(new Move("UP", 0)));
+        List<Move> moves = MoveLog.read(log).moves();
+        assertEquals(3, moves.size());
+        assertEquals(recorded, moves);
+
+        // a crash part way through writing a move loses only that move
+        byte[] bytes = Files.readAllBytes(log.toPath());
+        File crashed = new File(log.getParentFile(), "recorded-game-2" + MoveLog.EXTENSION);
+        Files.write(crashed.toPath(), Arrays.copyOf(bytes, bytes.length - 1));
+        assertEquals(moves.subList(0, 2), MoveLog.read(crashed).moves());
+
+        MoveLog.finish(log, new Board(Persistency.level1));
+        try (MoveLog.Cursor cursor = MoveLog.open(log)) {
+            assertEquals(3, cursor.size());
+        }
+        assertEquals(moves, MoveLog.read(log).moves());
+        assertFalse(MoveLog.readKeyframes(log).isEmpty());
+    }
+
+    @Test
+    public void testReplaySchedulerKeepsRecordedTimes() {
+        List<Move> moves = List.of(new Move("UP", 1.0), new Move("LEFT", 1.5), new Move("DOWN", 3.0),
+                new Move("RIGHT", 3.0));
+        long[] now = {0};
+        boolean[] paused = {false};
+        List<Move> played = new ArrayList<>();
+        ReplayScheduler replay = new ReplayScheduler(ReplaySource.of(moves), played::add, () -> paused[0],
+                () -> now[0]);
+        replay.setSpeed(2);
+
+        // the first move is played straight away, the next half a recorded second later at twice the speed
+        assertEquals(ReplayScheduler.MAX_WAIT_NANOS, replay.advance());
+        assertEquals(moves.subList(0, 1), played);
+        now[0] = 200_000_000L;
+        assertEquals(50_000_000L, replay.advance());
+        now[0] = 260_000_000L;
+        assertEquals(ReplayScheduler.MAX_WAIT_NANOS, replay.advance());
+        assertEquals(moves.subList(0, 2), played);
+
+        // no replay time passes while paused
+        paused[0] = true;
+        now[0] = 5_000_000_000L;
+        assertEquals(ReplayScheduler.MAX_WAIT_NANOS, replay.advance());
+        assertEquals(2, played.size());
+        paused[0] = false;
+        now[0] = 5_600_000_000L;
+        assertEquals(ReplayScheduler.MAX_WAIT_NANOS, replay.advance());
+        assertEquals(2, played.size());
+
+        // moves due at the same time are played together
+        replay.setSpeed(1);
+        now[0] = 6_000_000_000L;
+        assertEquals(-1, replay.advance());
+        assertEquals(moves, played);
+        assertTrue(replay.isFinished());
+        assertEquals(4, replay.getLateness().getCount());
+        assertEquals(0, replay.getLateness().getMin());
+        assertEquals(120_000_000L, replay.getLateness().getMax(), 1_000);
+    }
+
+    @Test
+    public void testBatchVerifier() throws IOException {
+        File directory = Files.createTempDirectory("saves").toFile();
+        for (int i = 1; i <= 20; i++) {
+            File state = new File(directory, "recorded-game-" + i + ".json");
+            Files.copy(Persistency.level1.toPath(), state.toPath());
+            List<Move> moves = new ArrayList<>();
+            for (int move = 0; move < i; move++) {
+                moves.add(new Move(move % 2 == 0 ? "RIGHT" : "UP", move));
+            }
+            MoveLog.write(MoveLog.logFor(state), state.getName(), moves, new Board(state));
+        }
+        assertEquals(20, BatchVerifier.findRecordings(directory).size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream print = new PrintStream(out, true);
+        String path = directory.getPath();
+        assertEquals(0, BatchVerifier.run(new String[]{path, "--update", "--threads", "4"}, print, print));
+        assertEquals(20, BatchVerifier.readManifest(new File(directory, BatchVerifier.MANIFEST)).size());
+        assertEquals(0, BatchVerifier.run(new String[]{path}, print, print));
+
+        // a recording that ends somewhere else is reported
+        File changed = new File(directory, "recorded-game-3" + MoveLog.EXTENSION);
+        MoveLog.write(changed, "recorded-game-3.json", List.of(new Move("LEFT", 0)));
+        out.reset();
+        assertEquals(1, BatchVerifier.run(new String[]{path, "--threads", "2"}, print, print));
+        assertTrue(out.toString().contains("MISMATCH recorded-game-3" + MoveLog.EXTENSION));
+        assertEquals(2, BatchVerifier.run(new String[]{}, print, print));
+    }
+
+    @Test
+    public void testReplaySchedulerSpacesUntimedMoves() throws IOException {
+        long[] now = {0};
+        List<Move> played = new ArrayList<>();
+        try (ReplaySource moves = Recorder.openMoves(testFile)) {
+            ReplayScheduler replay = new ReplayScheduler(moves, played::add, () -> false, () -> now[0]);
+            replay.setSpeed(2);
+            replay.advance();
+            assertEquals(1, played.size());
+            assertTrue(Double.isNaN(played.get(0).time()));
+
+            // untimed moves keep the fixed interval, scaled by the speed
+            now[0] = 290_000_000L;
+            replay.advance();
+            assertEquals(1, played.size());
+            now[0] = 300_000_000L;
+            replay.advance();
+            assertEquals(2, played.size());
+            now[0] = 900_000_000L;
+            replay.advance();
+            assertEquals(4, played.size());
+        }
+
+        StringWriter json = new StringWriter();
+        JsonAdapters.MOVES.write(new JsonWriter(json), played.get(0));
+        assertEquals("\"LEFT\"", json.toString());
+    }
+}
@@ -0,0 +1,122 @@
+package nz.ac.wgtn.swen225.lc.recorder;
+
+import nz.ac.wgtn.swen225.lc.app.Move;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A replay source that can step back. The moves read so far are remembered,
+ * and moves stepped back over are handed out again before any more are read
+ * from the source underneath, so the source itself only ever goes forward.
+ * The board is taken back alongside with a
+ * {@link nz.ac.wgtn.swen225.lc.domain.MoveHistory MoveHistory}.
+ * <p>
+ * Only the newest {@link #DEPTH} moves read can be stepped back over, so a
+ * long replay holds no more than that many moves in memory.
+ */
+public class RewindableSource implements ReplaySource {
+    /**
+     * The most moves that can be stepped back over, unless another depth is given.
+     */
+    public static final int DEPTH = 10_000;
+
+    private final ReplaySource source;
+    private final int depth;
+    private final Deque<Move> played = new ArrayDeque<>();
+    private final Deque<Move> undone = new ArrayDeque<>();
+
+    /**
+     * Wrap a source so that it can step back.
+     *
+     * @param source the source to read moves from
+     */
+    public RewindableSource(ReplaySource source) {
+        this(source, DEPTH);
+    }
+
+    /**
+     * Wrap a source so that it can step back over a given number of moves.
+     *
+     * @param source the source to read moves from
+     * @param depth  the most moves that can be stepped back over
+     */
+    public RewindableSource(ReplaySource source, int depth) {
+        if (source == null || depth < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.source = source;
+        this.depth = depth;
+    }
+
+    /**
+     * Get the most moves that can be stepped back over.
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Get the source the moves are read from.
+     *
+     * @return the source underneath
+     */
+    public ReplaySource getSource() {
+        return source;
+    }
+
+    /**
+     * Check whether a move has been handed out that can be stepped back over.
+     *
+     * @return true if {@link #back()} will step back
+     */
+    public boolean canStepBack() {
+        return !played.isEmpty();
+    }
+
+    /**
+     * Step back over the last move handed out, so that {@link #next()} hands
+     * it out again.
+     *
+     * @return false if no move has been handed out
+     */
+    public boolean back() {
+        if (played.isEmpty()) {
+            return false;
+        }
+        undone.push(played.pop());
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !undone.isEmpty() || source.hasNext();
+    }
+
+    @Override
+    public Move next() {
+        Move move = undone.isEmpty() ? source.next() : undone.pop();
+        played.push(move);
+        if (played.size() > depth) {
+            played.removeLast();
+        }
+        return move;
+    }
+
+    @Override
+    public int position() {
+        return source.position() - undone.size();
+    }
+
+    @Override
+    public int size() {
+        return source.size();
+    }
+
+    @Override
+    public void close() {
+        source.close();
+    }
+}
@@ -44,7 +44,7 @@ public class Camera {
             }
         }
         // Once camera reaches point where boat is in center of focus area, stop moving
-        if ((getX() == chap.getTile().getX() - (int) (w / 2)) && (y == chap.getTile().getY() - (int) (w / 2))) {
+        if ((getX() == chap.getX() - (int) (w / 2)) && (y == chap.getY() - (int) (w / 2))) {
             state = State.IDLE;
         }
     }
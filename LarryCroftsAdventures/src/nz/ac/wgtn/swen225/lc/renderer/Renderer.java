@@ -9,8 +9,6 @@ import nz.ac.wgtn.swen225.lc.persistency.AutoActor;
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -29,7 +27,6 @@ public class Renderer extends JPanel {
 
     // Game objects
     Board board;
-    Tile[][] grid;
     public Camera camera;
     private final AudioUnit audioUnit;
     private final Random random = new Random();
@@ -52,7 +49,6 @@ public class Renderer extends JPanel {
     private boolean seagullActivated = false;
 
     private final App app;
-    public Timer timer;
 
     /**
      * Constructor for the Renderer class.
@@ -62,32 +58,25 @@ public class Renderer extends JPanel {
     public Renderer(Board board, int focusAreaSize, AudioUnit au, App app) throws IOException {
 
         this.board = board;
-        this.grid = board.getTiles();
         this.app = app;
-        this.camera = new Camera(board.getChap().getTile().getX() - (focusAreaSize / 2),
-                board.getChap().getTile().getY() - (focusAreaSize / 2), focusAreaSize, focusAreaSize);
+        this.camera = new Camera(board.getChap().getX() - (focusAreaSize / 2),
+                board.getChap().getY() - (focusAreaSize / 2), focusAreaSize, focusAreaSize);
         this.audioUnit = au;
         loadImages();
         loadAllAnimations();
 
-        startTimer();
-
     }
 
     /**
-     * Starts timer that calls repaint on this JPanel to refresh what is on screen
+     * Advances the view by one simulation tick: moves the camera, steps the
+     * animations and refreshes what is on screen. Called by the game clock.
      */
-    private void startTimer() {
-
-        timer = new Timer(10, new ActionListener() {
-            @Override
-            public void actionPerformed(ActionEvent e) {
-                app.treasureLabel.setText(""
-                        + (App.getBoard().getBoardTreasureCount() - App.getBoard().getChap().getPlayerTreasureCount()));
-                repaint();
-            }
-        });
-        timer.start();
+    public void step() {
+        camera.updateCameraPosition(board.getChap());
+        count++;
+        app.treasureLabel.setText(""
+                + (board.getBoardTreasureCount() - board.getChap().getPlayerTreasureCount()));
+        repaint();
     }
 
     /**
@@ -106,10 +95,6 @@ public class Renderer extends JPanel {
         drawAutoActors(g);
         drawBorder(new Color(232, 220, 202), cellSize, g);
         drawInfoPanel(g);
-
-        camera.updateCameraPosition(board.getChap());
-
-        count++;
     }
 
     public void playSound(Tile tile) {
@@ -133,10 +118,10 @@ public class Renderer extends JPanel {
                 Tile tile;
                 // If coordinates trying to be drawn is out of bounds of board then just draw a
                 // wall tile.
-                if (x < 0 || x >= grid.length || y < 0 || y >= grid[0].length) {
-                    tile = new Wall(0, 0);
+                if (x < 0 || x >= board.getWidth() || y < 0 || y >= board.getHeight()) {
+                    tile = TileKind.WALL.flyweight();
                 } else {
-                    tile = grid[x][y];
+                    tile = board.getTile(x, y);
                 }
                 // Get images that make up tile the draw to screen
                 ArrayList<BufferedImage> images = getTileImage(tile);
@@ -192,7 +177,7 @@ public class Renderer extends JPanel {
                     animations.get(Images.SEAGULL_RIGHT).get(count / 16 % animations.get(Images.SEAGULL_RIGHT).size()),
                     x, y, cellSize, cellSize, null);
             seagullX += 0.05;
-            if (seagullX > grid.length) { // Seagull off the screen so deactivated
+            if (seagullX > board.getWidth()) { // Seagull off the screen so deactivated
                 seagullActivated = false;
                 seagullX = 0;
             }
@@ -368,6 +353,16 @@ public class Renderer extends JPanel {
         return (worldY - camera.getY()) * clampedValue + distanceFromTopBorder;
     }
 
+    /**
+     * Moves the camera straight to the player, for when the player jumps rather
+     * than walks, such as when a replay seeks to another move.
+     */
+    public void centreCamera() {
+        camera.setX(board.getChap().getX() - (int) (camera.getWidth() / 2));
+        camera.setY(board.getChap().getY() - (int) (camera.getHeight() / 2));
+        camera.setState(Camera.State.IDLE);
+    }
+
     /**
      * Returns the renderer's camera
      *